@@ -50,7 +50,7 @@ public class HomeController {
 	Mono<Rendering> home() { // <1>
 		return Mono.just(Rendering.view("home.html") // <2>
 				.modelAttribute("items", //
-						this.itemRepository.findAll()) // <3>
+						this.itemRepository.findAllBy(ItemSummary.class)) // <3>
 				.modelAttribute("cart", //
 						this.cartRepository.findById("My Cart") // <4>
 								.defaultIfEmpty(new Cart("My Cart")))
@@ -101,10 +101,13 @@ public class HomeController {
 	Mono<Rendering> search( //
 			@RequestParam(required = false) String name, // <2>
 			@RequestParam(required = false) String description, //
-			@RequestParam boolean useAnd) {
+			@RequestParam boolean useAnd, //
+			@RequestParam(required = false) Integer limit) {
 		return Mono.just(Rendering.view("home.html") // <3>
 				.modelAttribute("items", //
-						inventoryService.searchByExample(name, description, useAnd)) // <4>
+						inventoryService.searchSummaries(name, description, useAnd, limit)) // <4>
+				.modelAttribute("limit", inventoryService.limit(limit)) //
+				.modelAttribute("itemCount", inventoryService.estimateItemCount()) //
 				.modelAttribute("cart", //
 						this.cartRepository.findById("My Cart")
 								.defaultIfEmpty(new Cart("My Cart")))
@@ -16,14 +16,36 @@
 
 package com.greglturnquist.hackingspringboot.reactive;
 
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
-import org.springframework.data.domain.ExampleMatcher.StringMatcher;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.Point;
+import org.springframework.data.geo.Shape;
 import org.springframework.data.mongodb.core.ReactiveFluentMongoOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.NearQuery;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import static org.springframework.data.mongodb.core.query.Criteria.byExample;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.bucket;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.facet;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.geoNear;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
 import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.springframework.data.mongodb.core.query.Query.query;
 
@@ -36,11 +58,49 @@ class InventoryService {
 
 	private ItemRepository repository;
 	private ReactiveFluentMongoOperations fluentOperations;
+	private ReactiveMongoOperations operations;
+	private ItemSearchIndex searchIndex;
+	private ItemGridIndex gridIndex;
+	private ItemFacetsCache facetsCache;
+	private MeterRegistry meterRegistry;
+	private TypedAggregation<Item> facetsAggregation;
+	private SearchMode searchMode;
+	private int defaultLimit;
+	private int maxLimit;
+	private Duration maxTime;
+	private boolean parallelOr;
 
 	InventoryService(ItemRepository repository, //
-			ReactiveFluentMongoOperations fluentOperations) {
+			ReactiveFluentMongoOperations fluentOperations, //
+			ReactiveMongoOperations operations, //
+			ItemSearchIndex searchIndex, //
+			ItemGridIndex gridIndex, //
+			ItemFacetsCache facetsCache, //
+			MeterRegistry meterRegistry, //
+			@Value("${inventory.search.mode:contains}") SearchMode searchMode, //
+			@Value("${inventory.search.default-limit:100}") int defaultLimit, //
+			@Value("${inventory.search.max-limit:1000}") int maxLimit, //
+			@Value("${inventory.search.max-time:2s}") Duration maxTime, //
+			@Value("${inventory.search.parallel-or:false}") boolean parallelOr) {
 		this.repository = repository;
 		this.fluentOperations = fluentOperations;
+		this.operations = operations;
+		this.searchIndex = searchIndex;
+		this.gridIndex = gridIndex;
+		this.facetsCache = facetsCache;
+		this.meterRegistry = meterRegistry;
+		this.searchMode = searchMode;
+		this.defaultLimit = defaultLimit;
+		this.maxLimit = maxLimit;
+		this.maxTime = maxTime;
+		this.parallelOr = parallelOr;
+		this.facetsAggregation = newAggregation(Item.class, //
+				facet(group("distributorRegion").count().as("count")).as("regions") //
+						.and(bucket("price") //
+								.withBoundaries((Object[]) ItemFacets.PRICE_BOUNDARIES) //
+								.withDefaultBucket(ItemFacets.OPEN_PRICE_RANGE)).as("prices") //
+						.and(group("active").count().as("count")).as("active")) //
+				.withOptions(AggregationOptions.builder().maxTime(maxTime).build());
 	}
 
 	Flux<Item> getItems() {
@@ -73,22 +133,207 @@ class InventoryService {
 	}
 	// end::code-2[]
 
+	/**
+	 * Items whose name contains {@code partialName} and/or whose description contains
+	 * {@code partialDescription}, never more than {@code limit} of them. Both fields are matched ignoring case,
+	 * as {@link #searchByExample} does, where {@link #search(String, String, boolean)} matches a name on its own
+	 * with its case.
+	 * <p>
+	 * A {@code null} limit means {@code inventory.search.default-limit}, and no limit goes past
+	 * {@code inventory.search.max-limit}, so even a search without criteria cannot list the whole catalog.
+	 * MongoDB aborts a query still running after {@code inventory.search.max-time}, and cancelling the
+	 * returned {@link Flux}, as WebFlux does when the client goes away, closes its cursor.
+	 */
+	Flux<Item> search(String partialName, String partialDescription, boolean useAnd, Integer limit) {
+		int bound = limit(limit);
+
+		if (searchMode == SearchMode.TEXT && (partialName != null || partialDescription != null)) {
+			return searchByText(partialName, partialDescription, useAnd, bound);
+		}
+		if (parallelOr && !useAnd && partialName != null && partialDescription != null) {
+			return eitherField(items(ItemSearchQuery.of(partialName, null, false), bound), //
+					items(ItemSearchQuery.of(null, partialDescription, false), bound), Item::getId, bound);
+		}
+		if (searchIndex.isLoaded()) {
+			return Flux.defer(() -> items(byId(searchIndex.find(partialName, partialDescription, useAnd, bound)), //
+					bound));
+		}
+
+		return items(ItemSearchQuery.of(partialName, partialDescription, useAnd), bound);
+	}
+
 	// tag::code-3[]
 	Flux<Item> searchByExample(String name, String description, boolean useAnd) {
-		Item item = new Item(name, description, 0.0); // <1>
+		return items(ItemSearchQuery.of(name, description, useAnd), limit(null));
+	}
+	// end::code-3[]
 
-		ExampleMatcher matcher = (useAnd // <2>
-				? ExampleMatcher.matchingAll() //
-				: ExampleMatcher.matchingAny()) //
-						.withStringMatcher(StringMatcher.CONTAINING) // <3>
-						.withIgnoreCase() // <4>
-						.withIgnorePaths("price"); // <5>
+	/**
+	 * The same items as {@link #search(String, String, boolean, Integer)}, with only the fields a list of
+	 * them shows read from the database.
+	 */
+	Flux<ItemSummary> searchSummaries(String partialName, String partialDescription, boolean useAnd,
+			Integer limit) {
+		int bound = limit(limit);
 
-		Example<Item> probe = Example.of(item, matcher); // <6>
+		if (searchMode == SearchMode.TEXT && (partialName != null || partialDescription != null)) {
+			return summaries(textQuery(partialName, partialDescription, useAnd), bound);
+		}
+		if (parallelOr && !useAnd && partialName != null && partialDescription != null) {
+			return eitherField(summaries(ItemSearchQuery.of(partialName, null, false), bound), //
+					summaries(ItemSearchQuery.of(null, partialDescription, false), bound), ItemSummary::getId, bound);
+		}
+		if (searchIndex.isLoaded()) {
+			return Flux.defer(() -> summaries(byId(searchIndex.find(partialName, partialDescription, useAnd, bound)), //
+					bound));
+		}
 
-		return repository.findAll(probe); // <7>
+		return summaries(ItemSearchQuery.of(partialName, partialDescription, useAnd), bound);
+	}
+
+	/**
+	 * Search the text index on name and description, best matches first. With {@code useAnd}, each
+	 * criterion must appear as a phrase; otherwise any of their words will do. Unlike the substring
+	 * searches, whole words are matched (after stemming) and either field may contain them.
+	 */
+	Flux<Item> searchByText(String name, String description, boolean useAnd, Integer limit) {
+		return fluentOperations.query(Item.class) //
+				.matching(bounded(textQuery(name, description, useAnd), limit(limit))) //
+				.all();
+	}
+
+	private static Query textQuery(String name, String description, boolean useAnd) {
+		TextCriteria criteria = TextCriteria.forDefaultLanguage();
+		for (String terms : new String[] { name, description }) {
+			if (terms != null) {
+				criteria = useAnd ? criteria.matchingPhrase(terms) : criteria.matching(terms);
+			}
+		}
+		return TextQuery.queryText(criteria).sortByScore();
+	}
+
+	/**
+	 * Items in stock within {@code maxDistance} of {@code location}, nearest first, each with its distance.
+	 * Served from {@link ItemGridIndex} when it is enabled and the area is small enough, and otherwise by a
+	 * {@code $geoNear} aggregation over the 2dsphere index, which MongoDB stops after the limit and aborts after
+	 * the time budget of {@link #search(String, String, boolean, Integer)}.
+	 */
+	Flux<GeoResult<Item>> findNear(Point location, Distance maxDistance, Integer limit) {
+		int bound = limit(limit);
+
+		if (gridIndex.isLoaded()) {
+			List<GeoResult<Item>> nearby = gridIndex.near(location, maxDistance, bound);
+			if (nearby != null) {
+				return Flux.fromIterable(nearby);
+			}
+		}
+
+		NearQuery near = NearQuery.near(location) //
+				.maxDistance(maxDistance) //
+				.spherical(true) //
+				.query(query(where("availableUnits").gt(0)).limit(bound));
+
+		return operations.aggregate(newAggregation(Item.class, geoNear(near, "distance")) //
+				.withOptions(AggregationOptions.builder().maxTime(maxTime).build()), Document.class) //
+				.map(document -> new GeoResult<>(operations.getConverter().read(Item.class, document), //
+						new Distance(document.get("distance", Number.class).doubleValue(), near.getMetric())));
+	}
+
+	/**
+	 * Items located inside {@code area}, a {@link org.springframework.data.geo.Circle},
+	 * {@link org.springframework.data.geo.Box} or {@link org.springframework.data.geo.Polygon}. Limited like
+	 * {@link #search(String, String, boolean, Integer)}.
+	 */
+	Flux<Item> findWithin(Shape area, Integer limit) {
+		return items(query(where("location").within(area)), limit(limit));
+	}
+
+	/**
+	 * Item counts per distributor region, price range and status across the whole catalog. Read from
+	 * {@link ItemFacetsCache} when it is enabled, and otherwise counted by MongoDB in a single {@code $facet}
+	 * aggregation, so only the counts cross the wire.
+	 */
+	Mono<ItemFacets> facets() {
+		if (facetsCache.isLoaded()) {
+			return Mono.fromSupplier(facetsCache::snapshot);
+		}
+
+		return operations.aggregate(facetsAggregation, Document.class) //
+				.next() //
+				.map(ItemFacets::of);
+	}
+
+	/**
+	 * The number of items in the catalog, to show alongside a page of search results. Read from the search
+	 * index once it has loaded, and otherwise from the collection's metadata, rather than counted.
+	 */
+	Mono<Long> estimateItemCount() {
+		return searchIndex.isLoaded() //
+				? Mono.just((long) searchIndex.size()) //
+				: operations.estimatedCount(Item.class);
+	}
+
+	/**
+	 * The limit a search actually gets when asked for {@code requested} results.
+	 */
+	int limit(Integer requested) {
+		if (requested == null || requested < 1) {
+			return defaultLimit;
+		}
+		return Math.min(requested, maxLimit);
+	}
+
+	private Query bounded(Query query, int limit) {
+		return query.limit(limit).maxTime(maxTime);
+	}
+
+	/**
+	 * Scatter-gather for an OR search: query the name and the description at the same time, and pass on each
+	 * match as soon as either query finds it, once only, until {@code limit} matches have gone out. Unlike a
+	 * single {@code $or} query, the first matches don't wait for the slower field, and each field's query can
+	 * use its own index.
+	 * <p>
+	 * Only used with {@code inventory.search.parallel-or} set, and then for every OR search on both fields, ahead of
+	 * {@link ItemSearchIndex}. Otherwise such a search is the single {@code $or} query of {@link ItemSearchQuery}.
+	 * <p>
+	 * How long each query ran, and whether it completed, failed or was cancelled because the other had
+	 * already found enough, is recorded in {@code inventory.search.branch}, tagged by field.
+	 */
+	private <T> Flux<T> eitherField(Flux<T> byName, Flux<T> byDescription, Function<T, String> id, int limit) {
+		return Flux.merge(timed("name", byName), timed("description", byDescription)) //
+				.distinct(id) //
+				.take(limit);
+	}
+
+	private <T> Flux<T> timed(String field, Flux<T> branch) {
+		return Flux.defer(() -> {
+			Timer.Sample sample = Timer.start(meterRegistry);
+			return branch.doFinally(signal -> sample.stop(Timer.builder("inventory.search.branch") //
+					.description("Time taken by one field's query in a parallel OR search") //
+					.tags("field", field, "outcome", signal.name().toLowerCase(Locale.ROOT)) //
+					.register(meterRegistry)));
+		});
+	}
+
+	/**
+	 * The items with the given ids, which {@link ItemSearchIndex} found but does not hold.
+	 */
+	private static Query byId(List<String> ids) {
+		return query(where("id").in(ids));
+	}
+
+	private Flux<Item> items(Query query, int limit) {
+		return fluentOperations.query(Item.class) //
+				.matching(bounded(query, limit)) //
+				.all();
+	}
+
+	private Flux<ItemSummary> summaries(Query query, int limit) {
+		return fluentOperations.query(Item.class) //
+				.as(ItemSummary.class) //
+				.matching(ItemSummary.select(bounded(query, limit))) //
+				.all();
 	}
-	// end::code-3[]
 
 	// tag::code-4[]
 	Flux<Item> searchByFluentExample(String name, String description) {
@@ -100,20 +345,36 @@ class InventoryService {
 
 	// tag::code-5[]
 	Flux<Item> searchByFluentExample(String name, String description, boolean useAnd) {
-		Item item = new Item(name, description, 0.0);
-
-		ExampleMatcher matcher = (useAnd //
-				? ExampleMatcher.matchingAll() //
-				: ExampleMatcher.matchingAny()) //
-						.withStringMatcher(StringMatcher.CONTAINING) //
-						.withIgnoreCase() //
-						.withIgnorePaths("price");
-
 		return fluentOperations.query(Item.class) //
-				.matching(query(byExample(Example.of(item, matcher)))) //
+				.matching(bounded(ItemSearchQuery.of(name, description, useAnd), limit(null))) //
 				.all();
 	}
 	// end::code-5[]
 
+	/**
+	 * {@link #searchByFluentExample(String, String, boolean)}, reading only the fields of {@link ItemSummary}.
+	 */
+	Flux<ItemSummary> searchSummariesByFluentExample(String name, String description, boolean useAnd) {
+		return fluentOperations.query(Item.class) //
+				.as(ItemSummary.class) //
+				.matching(ItemSummary.select(bounded(ItemSearchQuery.of(name, description, useAnd), limit(null)))) //
+				.all();
+	}
+
+	/**
+	 * How {@link #search} finds items, set with {@code inventory.search.mode}.
+	 */
+	enum SearchMode {
+
+		/**
+		 * Case-insensitive substring match, from {@link ItemSearchIndex} once it has loaded.
+		 */
+		CONTAINS,
+
+		/**
+		 * Word match through MongoDB's text index, ordered by relevance.
+		 */
+		TEXT
+	}
 }
 // end::code[]
@@ -18,6 +18,7 @@ package com.greglturnquist.hackingspringboot.reactive;
 
 import org.springframework.data.annotation.Id;
 import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.mapping.TextScore;
 
 import java.util.Date;
 import java.util.Objects;
@@ -37,6 +38,8 @@ public class Item {
 
 	// end::code[]
 
+	private @TextScore Float score;
+
 	private Item() {}
 
 	Item(String name, String description, double price) {
@@ -117,6 +120,13 @@ public class Item {
 		this.active = active;
 	}
 
+	/**
+	 * Relevance of this item to a text search, or {@code null} if it was not found by one.
+	 */
+	public Float getScore() {
+		return score;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) {
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bson.Document;
+
+/**
+ * Catalog-wide counts for browsing the inventory: items per distributor region, per price range, and active
+ * versus inactive.
+ */
+class ItemFacets {
+
+	/**
+	 * Where each price range starts. Each range runs up to the next boundary, and the last one has no upper
+	 * bound. A price below the first boundary counts in the last range, as it would in MongoDB's default bucket.
+	 */
+	static final Double[] PRICE_BOUNDARIES = { 0.0, 10.0, 25.0, 50.0, 100.0, 250.0 };
+
+	/** The {@code $bucket} default bucket holding everything from the last boundary up. */
+	static final String OPEN_PRICE_RANGE = "more";
+
+	/** Items without a distributor region are counted under this one. */
+	static final String NO_REGION = "unassigned";
+
+	private final Map<String, Long> regions;
+	private final List<PriceRange> prices;
+	private final long active;
+	private final long inactive;
+
+	ItemFacets(Map<String, Long> regions, long[] priceRangeCounts, long active, long inactive) {
+		this.regions = Collections.unmodifiableMap(new TreeMap<>(regions));
+		List<PriceRange> prices = new ArrayList<>(PRICE_BOUNDARIES.length);
+		for (int i = 0; i < PRICE_BOUNDARIES.length; i++) {
+			Double to = i + 1 < PRICE_BOUNDARIES.length ? PRICE_BOUNDARIES[i + 1] : null;
+			prices.add(new PriceRange(PRICE_BOUNDARIES[i], to, priceRangeCounts[i]));
+		}
+		this.prices = Collections.unmodifiableList(prices);
+		this.active = active;
+		this.inactive = inactive;
+	}
+
+	/**
+	 * Read the single document the {@code $facet} stage of {@link InventoryService#facets()} produces.
+	 */
+	static ItemFacets of(Document result) {
+		Map<String, Long> regions = new TreeMap<>();
+		for (Document region : result.getList("regions", Document.class)) {
+			regions.merge(region(region.getString("_id")), count(region), Long::sum);
+		}
+
+		// $bucket leaves out empty ranges and labels each of the others with its lower boundary.
+		long[] prices = new long[PRICE_BOUNDARIES.length];
+		for (Document range : result.getList("prices", Document.class)) {
+			Object from = range.get("_id");
+			prices[from instanceof Number ? priceRange(((Number) from).doubleValue()) : PRICE_BOUNDARIES.length - 1] //
+					+= count(range);
+		}
+
+		long active = 0;
+		long inactive = 0;
+		for (Document status : result.getList("active", Document.class)) {
+			if (Boolean.TRUE.equals(status.get("_id"))) {
+				active += count(status);
+			} else {
+				inactive += count(status);
+			}
+		}
+
+		return new ItemFacets(regions, prices, active, inactive);
+	}
+
+	static String region(String distributorRegion) {
+		return distributorRegion == null ? NO_REGION : distributorRegion;
+	}
+
+	/**
+	 * The index of the price range {@code price} falls in.
+	 */
+	static int priceRange(double price) {
+		for (int i = PRICE_BOUNDARIES.length - 1; i > 0; i--) {
+			if (price >= PRICE_BOUNDARIES[i]) {
+				return i;
+			}
+		}
+		return price >= PRICE_BOUNDARIES[0] ? 0 : PRICE_BOUNDARIES.length - 1;
+	}
+
+	private static long count(Document group) {
+		return ((Number) group.get("count")).longValue();
+	}
+
+	public Map<String, Long> getRegions() {
+		return regions;
+	}
+
+	public List<PriceRange> getPrices() {
+		return prices;
+	}
+
+	public long getActive() {
+		return active;
+	}
+
+	public long getInactive() {
+		return inactive;
+	}
+
+	/**
+	 * The number of items priced from {@code from} up to, but not including, {@code to}; {@code to} is
+	 * {@code null} for the open-ended last range.
+	 */
+	static class PriceRange {
+
+		private final double from;
+		private final Double to;
+		private final long count;
+
+		PriceRange(double from, Double to, long count) {
+			this.from = from;
+			this.to = to;
+			this.count = count;
+		}
+
+		public double getFrom() {
+			return from;
+		}
+
+		public Double getTo() {
+			return to;
+		}
+
+		public long getCount() {
+			return count;
+		}
+	}
+}
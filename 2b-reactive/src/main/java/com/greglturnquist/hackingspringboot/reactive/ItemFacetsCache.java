@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import reactor.core.publisher.Flux;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link ItemFacets} counts, kept in memory so reading them costs nothing.
+ * <p>
+ * Rather than re-running the aggregation, every save and delete moves a single item from one count to another.
+ * To know which counts an item was in before a save, the region, price range and status of each item are kept
+ * too, read with only those three fields once the application is ready.
+ * <p>
+ * Disabled unless {@code inventory.facets.cache.enabled} is set. Loaded and kept current as an
+ * {@link ItemMirror}. Only writes made through this application are seen; with other writers, leave it off and
+ * aggregate on every request.
+ */
+@Component
+class ItemFacetsCache extends ItemMirror {
+
+	private final ReactiveMongoOperations operations;
+
+	// All guarded by lock.
+	private final Map<String, Facets> facetsById = new HashMap<>();
+	private final Map<String, Long> regions = new HashMap<>();
+	private final long[] prices = new long[ItemFacets.PRICE_BOUNDARIES.length];
+	private long active;
+
+	ItemFacetsCache(ReactiveMongoOperations operations, //
+			@Value("${inventory.facets.cache.enabled:false}") boolean enabled) {
+		super("the inventory facets", enabled, LOAD_RETRY_BACKOFF);
+		this.operations = operations;
+	}
+
+	ItemFacets snapshot() {
+		this.lock.readLock().lock();
+		try {
+			return new ItemFacets(this.regions, this.prices.clone(), this.active, this.facetsById.size() - this.active);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected Flux<Item> read() {
+		Query query = new Query();
+		query.fields().include("distributorRegion").include("price").include("active");
+
+		return this.operations.find(query, Item.class);
+	}
+
+	@Override
+	protected void put(Item item) {
+		remove(item.getId());
+
+		Facets facets = new Facets(ItemFacets.region(item.getDistributorRegion()), //
+				ItemFacets.priceRange(item.getPrice()), item.isActive());
+		this.facetsById.put(item.getId(), facets);
+		count(facets, 1);
+	}
+
+	@Override
+	protected void remove(String id) {
+		Facets facets = this.facetsById.remove(id);
+		if (facets != null) {
+			count(facets, -1);
+		}
+	}
+
+	@Override
+	protected void clear() {
+		this.facetsById.clear();
+		this.regions.clear();
+		Arrays.fill(this.prices, 0);
+		this.active = 0;
+	}
+
+	private void count(Facets facets, int delta) {
+		Long regionCount = this.regions.merge(facets.region, (long) delta, Long::sum);
+		if (regionCount == 0) {
+			this.regions.remove(facets.region);
+		}
+		this.prices[facets.priceRange] += delta;
+		if (facets.active) {
+			this.active += delta;
+		}
+	}
+
+	/**
+	 * Where one item is counted.
+	 */
+	private static class Facets {
+
+		final String region;
+		final int priceRange;
+		final boolean active;
+
+		Facets(String region, int priceRange, boolean active) {
+			this.region = region;
+			this.priceRange = priceRange;
+			this.active = active;
+		}
+	}
+}
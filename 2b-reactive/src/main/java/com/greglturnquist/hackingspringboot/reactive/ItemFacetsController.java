@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import reactor.core.publisher.Mono;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Inventory counts for faceted browsing, without sending the catalog to the client to count.
+ */
+@RestController
+public class ItemFacetsController {
+
+	private InventoryService inventoryService;
+
+	public ItemFacetsController(InventoryService inventoryService) {
+		this.inventoryService = inventoryService;
+	}
+
+	@GetMapping("/items/facets")
+	Mono<ItemFacets> facets() {
+		return this.inventoryService.facets();
+	}
+}
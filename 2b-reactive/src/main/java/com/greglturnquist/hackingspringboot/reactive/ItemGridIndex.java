@@ -0,0 +1,184 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import reactor.core.publisher.Flux;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.Metrics;
+import org.springframework.data.geo.Point;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory grid of item locations, answering "in stock near me" without a round trip to MongoDB.
+ * <p>
+ * The globe is cut into cells of {@code inventory.geo.grid.cell-size} degrees on a side. A near query only
+ * measures the items in the cells overlapping its bounding box, with the same spherical distance MongoDB's
+ * 2dsphere index uses. A query that would cover more than {@code inventory.geo.grid.max-cells} cells, such as
+ * a large radius or one close to a pole, is not worth answering here, and {@link #near} returns {@code null}
+ * so the caller can ask MongoDB instead.
+ * <p>
+ * Disabled unless {@code inventory.geo.grid.enabled} is set. Loaded and kept current as an {@link ItemMirror}.
+ */
+@Component
+class ItemGridIndex extends ItemMirror {
+
+	private static final double EARTH_RADIUS_KM = Metrics.KILOMETERS.getMultiplier();
+
+	private final ItemRepository repository;
+	private final double cellSize;
+	private final int columns;
+	private final int maxCells;
+
+	// Both guarded by lock.
+	private final Map<Long, Map<String, Item>> cells = new HashMap<>();
+	private final Map<String, Long> cellsById = new HashMap<>();
+
+	ItemGridIndex(ItemRepository repository, //
+			@Value("${inventory.geo.grid.enabled:false}") boolean enabled, //
+			@Value("${inventory.geo.grid.cell-size:0.5}") double cellSize, //
+			@Value("${inventory.geo.grid.max-cells:64}") int maxCells) {
+		super("the location grid", enabled, LOAD_RETRY_BACKOFF);
+		this.repository = repository;
+		this.cellSize = cellSize;
+		this.columns = (int) Math.ceil(360 / cellSize);
+		this.maxCells = maxCells;
+	}
+
+	/**
+	 * Items in stock within {@code maxDistance} of {@code location}, nearest first, at most {@code limit} of
+	 * them, or {@code null} if the query covers too much of the globe to answer from the grid.
+	 */
+	List<GeoResult<Item>> near(Point location, Distance maxDistance, int limit) {
+		double radius = maxDistance.in(Metrics.KILOMETERS).getValue();
+		double latitude = location.getY();
+		double longitude = location.getX();
+
+		double latitudeSpan = Math.toDegrees(radius / EARTH_RADIUS_KM);
+		double minLatitude = latitude - latitudeSpan;
+		double maxLatitude = latitude + latitudeSpan;
+		if (minLatitude < -90 || maxLatitude > 90) {
+			return null;
+		}
+		double longitudeSpan = latitudeSpan
+				/ Math.cos(Math.toRadians(Math.max(Math.abs(minLatitude), Math.abs(maxLatitude))));
+
+		int firstRow = row(minLatitude);
+		int lastRow = row(maxLatitude);
+		int firstColumn = column(longitude - longitudeSpan);
+		int columnCount = column(longitude + longitudeSpan) - firstColumn + 1;
+		if (longitudeSpan >= 180 || (long) (lastRow - firstRow + 1) * columnCount > this.maxCells) {
+			return null;
+		}
+
+		List<GeoResult<Item>> results = new ArrayList<>();
+
+		this.lock.readLock().lock();
+		try {
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int i = 0; i < columnCount; i++) {
+					Map<String, Item> cell = this.cells.get(key(row, Math.floorMod(firstColumn + i, this.columns)));
+					if (cell == null) {
+						continue;
+					}
+					for (Item item : cell.values()) {
+						double distance = distance(location, item.getLocation());
+						if (distance <= radius && item.getAvailableUnits() > 0) {
+							results.add(new GeoResult<>(item, new Distance(distance, Metrics.KILOMETERS)));
+						}
+					}
+				}
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+
+		results.sort(Comparator.comparingDouble(result -> result.getDistance().getValue()));
+		return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+	}
+
+	@Override
+	protected Flux<Item> read() {
+		return this.repository.findAll() //
+				.filter(item -> item.getLocation() != null);
+	}
+
+	@Override
+	protected void put(Item item) {
+		remove(item.getId());
+		if (item.getLocation() != null) {
+			add(item);
+		}
+	}
+
+	@Override
+	protected void remove(String id) {
+		Long key = this.cellsById.remove(id);
+		if (key == null) {
+			return;
+		}
+		Map<String, Item> cell = this.cells.get(key);
+		cell.remove(id);
+		if (cell.isEmpty()) {
+			this.cells.remove(key);
+		}
+	}
+
+	@Override
+	protected void clear() {
+		this.cells.clear();
+		this.cellsById.clear();
+	}
+
+	private void add(Item item) {
+		long key = key(row(item.getLocation().getY()), Math.floorMod(column(item.getLocation().getX()), this.columns));
+		this.cells.computeIfAbsent(key, k -> new HashMap<>()).put(item.getId(), item);
+		this.cellsById.put(item.getId(), key);
+	}
+
+	private int row(double latitude) {
+		return (int) Math.floor((latitude + 90) / this.cellSize);
+	}
+
+	private int column(double longitude) {
+		return (int) Math.floor((longitude + 180) / this.cellSize);
+	}
+
+	private static long key(int row, int column) {
+		return ((long) row << 32) | column;
+	}
+
+	/**
+	 * Great-circle distance in kilometers, by the haversine formula.
+	 */
+	private static double distance(Point from, Point to) {
+		double fromLatitude = Math.toRadians(from.getY());
+		double toLatitude = Math.toRadians(to.getY());
+		double latitudeDelta = toLatitude - fromLatitude;
+		double longitudeDelta = Math.toRadians(to.getX() - from.getX());
+
+		double a = Math.pow(Math.sin(latitudeDelta / 2), 2)
+				+ Math.cos(fromLatitude) * Math.cos(toLatitude) * Math.pow(Math.sin(longitudeDelta / 2), 2);
+		return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+}
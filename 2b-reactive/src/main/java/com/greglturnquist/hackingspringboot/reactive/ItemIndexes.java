@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition.TextIndexDefinitionBuilder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the indexes item searches rely on when the application starts.
+ * <p>
+ * The text index behind {@link InventoryService#searchByText} weighs a match in the name three times as heavily as
+ * one in the description. MongoDB rejects a text query outright when the collection has no text index, and a
+ * near query when {@code location} has no geospatial one. The 2dsphere index measures distances on the globe.
+ * <p>
+ * Once they exist, the item collection's indexes are handed to {@link UnindexedQueries}.
+ */
+@Component
+class ItemIndexes {
+
+	@Bean
+	CommandLineRunner createItemIndexes(MongoOperations mongo, UnindexedQueries unindexedQueries) {
+		return args -> {
+			IndexOperations indexOperations = mongo.indexOps(Item.class);
+
+			indexOperations.ensureIndex(new TextIndexDefinitionBuilder() //
+					.onField("name", 3F) //
+					.onField("description") //
+					.build());
+			indexOperations.ensureIndex(new GeospatialIndex("location") //
+					.typed(GeoSpatialIndexType.GEO_2DSPHERE));
+
+			unindexedQueries.indexed(mongo.getCollectionName(Item.class), indexOperations.getIndexInfo());
+		};
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import reactor.core.publisher.Flux;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.Metrics;
+import org.springframework.data.geo.Point;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * "Find stock near me": items in stock around a location, streamed nearest first as newline-delimited JSON.
+ */
+@RestController
+public class ItemLocationController {
+
+	private InventoryService inventoryService;
+
+	public ItemLocationController(InventoryService inventoryService) {
+		this.inventoryService = inventoryService;
+	}
+
+	@GetMapping(value = "/items/near", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	Flux<GeoResult<Item>> near(@RequestParam double longitude, //
+			@RequestParam double latitude, //
+			@RequestParam(defaultValue = "10") double kilometers, //
+			@RequestParam(required = false) Integer limit) {
+		return this.inventoryService.findNear(new Point(longitude, latitude), //
+				new Distance(kilometers, Metrics.KILOMETERS), limit);
+	}
+}
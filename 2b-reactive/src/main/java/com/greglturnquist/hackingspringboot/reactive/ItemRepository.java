@@ -48,4 +48,7 @@ public interface ItemRepository extends ReactiveCrudRepository<Item, String>, Re
 	// search by name OR description
 	Flux<Item> findByNameContainingOrDescriptionContainingAllIgnoreCase(String partialName, String partialDesc);
 	// end::code-3[]
+
+	// every item, read as type, such as ItemSummary, fetching only the fields type has
+	<T> Flux<T> findAllBy(Class<T> type);
 }
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import reactor.core.publisher.Flux;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory trigram index over {@link Item#getName()} and {@link Item#getDescription()} for case-insensitive
+ * substring search.
+ * <p>
+ * MongoDB runs {@code Containing}/{@code IgnoreCase} queries as unanchored regular expressions, which no index
+ * can serve, so every search scans the collection. Here each item gets a document number, and every distinct
+ * three-character sequence of its lower-cased name and description points at the items that contain it. A
+ * query intersects the lists for its own trigrams, and the few candidates left are confirmed with
+ * {@link String#contains}. Queries shorter than three characters have no trigram and scan the items held in
+ * memory instead.
+ * <p>
+ * Only each item's id and lower-cased name and description are held; searches return ids, and callers fetch
+ * the items themselves by id.
+ * <p>
+ * Disabled unless {@code inventory.search.index.enabled} is set. Loaded and kept current as an {@link ItemMirror};
+ * until a load completes, {@link #isLoaded()} is {@code false} and callers should query the database. Only writes
+ * made through this application are seen; with other writers, leave it off.
+ */
+@Component
+class ItemSearchIndex extends ItemMirror {
+
+	private static final int GRAM = 3;
+
+	private final ReactiveMongoOperations operations;
+
+	// All guarded by lock. A document number is a position in documents; removing an item leaves a null
+	// behind, so posting lists only ever grow in ascending order and never need re-sorting.
+	private final List<Document> documents = new ArrayList<>();
+	private final Map<String, Integer> documentNumbers = new HashMap<>();
+	private final Map<String, Postings> nameGrams = new HashMap<>();
+	private final Map<String, Postings> descriptionGrams = new HashMap<>();
+	private int removed;
+
+	ItemSearchIndex(ReactiveMongoOperations operations, //
+			@Value("${inventory.search.index.enabled:false}") boolean enabled) {
+		super("the search index", enabled, LOAD_RETRY_BACKOFF);
+		this.operations = operations;
+	}
+
+	/**
+	 * The number of items indexed.
+	 */
+	int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.documentNumbers.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Ids of the items whose name contains {@code partialName} and/or whose description contains
+	 * {@code partialDescription}, ignoring case. A {@code null} criterion is left out, and with neither every
+	 * item matches, as with a query by example. Only the first {@code limit} matches are returned.
+	 */
+	List<String> find(String partialName, String partialDescription, boolean useAnd, int limit) {
+		this.lock.readLock().lock();
+		try {
+			int[] matches;
+
+			if (partialName == null && partialDescription == null) {
+				matches = scan(document -> true, limit);
+			} else if (partialName == null) {
+				matches = matches(partialDescription, this.descriptionGrams, Document::getDescription);
+			} else if (partialDescription == null) {
+				matches = matches(partialName, this.nameGrams, Document::getName);
+			} else if (useAnd) {
+				String description = partialDescription.toLowerCase(Locale.ROOT);
+				matches = Arrays.stream(matches(partialName, this.nameGrams, Document::getName)) //
+						.filter(number -> contains(this.documents.get(number).getDescription(), description)) //
+						.toArray();
+			} else {
+				matches = union(matches(partialName, this.nameGrams, Document::getName), //
+						matches(partialDescription, this.descriptionGrams, Document::getDescription));
+			}
+
+			List<String> ids = new ArrayList<>(Math.min(matches.length, limit));
+			for (int i = 0; i < matches.length && i < limit; i++) {
+				ids.add(this.documents.get(matches[i]).id);
+			}
+			return ids;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected Flux<Item> read() {
+		Query query = new Query();
+		query.fields().include("name").include("description");
+
+		return this.operations.find(query, Item.class);
+	}
+
+	@Override
+	protected void put(Item item) {
+		remove(item.getId());
+		add(new Document(item));
+	}
+
+	@Override
+	protected void remove(String id) {
+		Integer number = this.documentNumbers.remove(id);
+		if (number == null) {
+			return;
+		}
+
+		this.documents.set(number, null);
+		this.removed++;
+
+		// Stale numbers cost a lookup each time a query hits them, so rebuild once they outnumber live ones.
+		if (this.removed > this.documentNumbers.size()) {
+			compact();
+		}
+	}
+
+	@Override
+	protected void clear() {
+		this.documents.clear();
+		this.documentNumbers.clear();
+		this.nameGrams.clear();
+		this.descriptionGrams.clear();
+		this.removed = 0;
+	}
+
+	/**
+	 * Document numbers, in ascending order, of the live items whose field contains {@code query}.
+	 */
+	private int[] matches(String query, Map<String, Postings> grams, Function<Document, String> field) {
+		String needle = query.toLowerCase(Locale.ROOT);
+
+		if (needle.length() < GRAM) {
+			return scan(document -> contains(field.apply(document), needle), Integer.MAX_VALUE);
+		}
+
+		List<Postings> lists = new ArrayList<>();
+		for (String gram : grams(needle)) {
+			Postings postings = grams.get(gram);
+			if (postings == null) {
+				return new int[0];
+			}
+			lists.add(postings);
+		}
+		lists.sort(Comparator.comparingInt(postings -> postings.size));
+
+		int[] candidates = Arrays.copyOf(lists.get(0).numbers, lists.get(0).size);
+		for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+			candidates = intersect(candidates, lists.get(i));
+		}
+
+		return Arrays.stream(candidates) //
+				.filter(number -> {
+					Document document = this.documents.get(number);
+					return document != null && contains(field.apply(document), needle);
+				}) //
+				.toArray();
+	}
+
+	private int[] scan(Predicate<Document> predicate, int limit) {
+		int[] numbers = new int[Math.min(this.documents.size() - this.removed, limit)];
+		int size = 0;
+		for (int number = 0; number < this.documents.size() && size < numbers.length; number++) {
+			Document document = this.documents.get(number);
+			if (document != null && predicate.test(document)) {
+				numbers[size++] = number;
+			}
+		}
+		return Arrays.copyOf(numbers, size);
+	}
+
+	private void add(Document document) {
+		int number = this.documents.size();
+
+		this.documents.add(document);
+		this.documentNumbers.put(document.id, number);
+		index(document.getName(), number, this.nameGrams);
+		index(document.getDescription(), number, this.descriptionGrams);
+	}
+
+	private void compact() {
+		List<Document> live = new ArrayList<>(this.documentNumbers.size());
+		for (Document document : this.documents) {
+			if (document != null) {
+				live.add(document);
+			}
+		}
+
+		clear();
+		live.forEach(this::add);
+	}
+
+	private static void index(String value, int number, Map<String, Postings> grams) {
+		if (value == null) {
+			return;
+		}
+		for (String gram : grams(value)) {
+			grams.computeIfAbsent(gram, key -> new Postings()).add(number);
+		}
+	}
+
+	private static Set<String> grams(String value) {
+		if (value.length() < GRAM) {
+			return Collections.emptySet();
+		}
+		Set<String> grams = new LinkedHashSet<>();
+		for (int i = 0; i + GRAM <= value.length(); i++) {
+			grams.add(value.substring(i, i + GRAM));
+		}
+		return grams;
+	}
+
+	private static boolean contains(String value, String needle) {
+		return value != null && value.contains(needle);
+	}
+
+	/**
+	 * Keep the candidates that also appear in {@code postings}. Candidates are the shorter list, so each one
+	 * gallops forward through the postings instead of walking every entry of a common trigram.
+	 */
+	private static int[] intersect(int[] candidates, Postings postings) {
+		int[] result = new int[candidates.length];
+		int size = 0;
+		int low = 0;
+		for (int candidate : candidates) {
+			int step = 1;
+			int high = low;
+			while (high < postings.size && postings.numbers[high] < candidate) {
+				low = high + 1;
+				high += step;
+				step <<= 1;
+			}
+			int found = Arrays.binarySearch(postings.numbers, low, Math.min(high + 1, postings.size), candidate);
+			if (found >= 0) {
+				result[size++] = candidate;
+				low = found + 1;
+			} else {
+				low = -found - 1;
+			}
+			if (low >= postings.size) {
+				break;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	private static int[] union(int[] left, int[] right) {
+		int[] result = new int[left.length + right.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < left.length || j < right.length) {
+			if (j == right.length || (i < left.length && left[i] < right[j])) {
+				result[size++] = left[i++];
+			} else if (i == left.length || right[j] < left[i]) {
+				result[size++] = right[j++];
+			} else {
+				result[size++] = left[i++];
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * An indexed item's id, with its searchable fields lower-cased once up front.
+	 */
+	private static class Document {
+
+		private final String id;
+		private final String name;
+		private final String description;
+
+		Document(Item item) {
+			this.id = item.getId();
+			this.name = item.getName() == null ? null : item.getName().toLowerCase(Locale.ROOT);
+			this.description = item.getDescription() == null ? null
+					: item.getDescription().toLowerCase(Locale.ROOT);
+		}
+
+		String getName() {
+			return this.name;
+		}
+
+		String getDescription() {
+			return this.description;
+		}
+	}
+
+	/**
+	 * Ascending document numbers of the items containing one trigram.
+	 */
+	private static class Postings {
+
+		private int[] numbers = new int[4];
+		private int size;
+
+		void add(int number) {
+			if (this.size == this.numbers.length) {
+				this.numbers = Arrays.copyOf(this.numbers, this.size * 2);
+			}
+			this.numbers[this.size++] = number;
+		}
+	}
+}
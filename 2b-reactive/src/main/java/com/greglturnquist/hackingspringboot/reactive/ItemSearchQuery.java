@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.bson.BsonRegularExpression;
+import org.bson.Document;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * The substring searches {@link InventoryService} sends to MongoDB, compiled once per shape instead of derived
+ * from an example probe on every request, as {@link InventoryService#searchByExample} used to.
+ * <p>
+ * A search only ever varies in which of name and description it was given and whether both must match, so
+ * the whole {@link ExampleMatcher} round trip (building the probe, reflecting over {@link Item}, mapping
+ * the example) always lands on one of these few queries. Binding one takes a couple of documents and
+ * the quoted search terms.
+ * <p>
+ * Only name and description are matched. The probe used to carry {@code availableUnits} and
+ * {@code active} along too, since its defaults of {@code 0} and {@code false} were never ignored; these
+ * queries leave them out.
+ */
+enum ItemSearchQuery {
+
+	ALL {
+		@Override
+		Document bind(String name, String description) {
+			return new Document();
+		}
+	},
+
+	NAME {
+		@Override
+		Document bind(String name, String description) {
+			return new Document("name", containing(name));
+		}
+	},
+
+	DESCRIPTION {
+		@Override
+		Document bind(String name, String description) {
+			return new Document("description", containing(description));
+		}
+	},
+
+	NAME_AND_DESCRIPTION {
+		@Override
+		Document bind(String name, String description) {
+			return new Document("name", containing(name)) //
+					.append("description", containing(description));
+		}
+	},
+
+	NAME_OR_DESCRIPTION {
+		@Override
+		Document bind(String name, String description) {
+			return new Document("$or", Arrays.asList( //
+					NAME.bind(name, description), //
+					DESCRIPTION.bind(name, description)));
+		}
+	};
+
+	/**
+	 * The query matching items whose name contains {@code name} and/or whose description contains
+	 * {@code description}, ignoring case. A {@code null} criterion is left out.
+	 */
+	static Query of(String name, String description, boolean useAnd) {
+		return new BasicQuery(shapeOf(name, description, useAnd).bind(name, description));
+	}
+
+	static ItemSearchQuery shapeOf(String name, String description, boolean useAnd) {
+		if (name == null) {
+			return description == null ? ALL : DESCRIPTION;
+		}
+		if (description == null) {
+			return NAME;
+		}
+		return useAnd ? NAME_AND_DESCRIPTION : NAME_OR_DESCRIPTION;
+	}
+
+	abstract Document bind(String name, String description);
+
+	/**
+	 * An unanchored, case-insensitive match of the literal {@code value}.
+	 */
+	private static BsonRegularExpression containing(String value) {
+		return new BsonRegularExpression(Pattern.quote(value), "i");
+	}
+}
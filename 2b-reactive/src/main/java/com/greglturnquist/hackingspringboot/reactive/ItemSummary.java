@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * The fields of an {@link Item} that lists of items show. Reading only these skips fetching and decoding the
+ * description, location and everything else a list never renders.
+ */
+public class ItemSummary {
+
+	private final String id;
+	private final String name;
+	private final double price;
+
+	ItemSummary(String id, String name, double price) {
+		this.id = id;
+		this.name = name;
+		this.price = price;
+	}
+
+	static ItemSummary of(Item item) {
+		return new ItemSummary(item.getId(), item.getName(), item.getPrice());
+	}
+
+	/**
+	 * Narrow {@code query} to the fields of a summary.
+	 */
+	static Query select(Query query) {
+		query.fields().include("id").include("name").include("price");
+		return query;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the queries this application sends to MongoDB that no index can serve.
+ * <p>
+ * A filter counts as indexed when it tests the first field of one of its collection's indexes under the same
+ * collation, or when every one of its {@code $or} branches does. A regular expression that isn't anchored at the
+ * start, or that ignores case, doesn't count as such a test: MongoDB can only answer it by checking every key of
+ * the index, if not every document. Other queries scan the collection. They are
+ * counted in {@code mongodb.queries.unindexed}, tagged with the collection and the fields filtered on, and
+ * logged the first time each shape shows up. Queries without a filter are meant to read everything and are
+ * not counted, and neither are queries on collections whose indexes haven't been reported, as
+ * {@link ItemIndexes} does for items once it has created theirs.
+ * <p>
+ * The {@code Containing} and {@code IgnoreCase} searches of {@link ItemRepository} compile to such regular
+ * expressions, so no index is created for them; this is how to see what they cost.
+ */
+@Component
+class UnindexedQueries implements CommandListener {
+
+	private static final Logger log = LoggerFactory.getLogger(UnindexedQueries.class);
+
+	private static final BsonDocument NO_FILTER = new BsonDocument();
+
+	private final MeterRegistry registry;
+	private final Map<String, List<IndexedField>> indexedFields = new ConcurrentHashMap<>();
+	private final Set<String> reported = ConcurrentHashMap.newKeySet();
+
+	UnindexedQueries(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Bean
+	MongoClientSettingsBuilderCustomizer unindexedQueryListener() {
+		return settings -> settings.addCommandListener(this);
+	}
+
+	/**
+	 * Record the indexes {@code collection} has.
+	 */
+	void indexed(String collection, List<IndexInfo> indexes) {
+		List<IndexedField> fields = new ArrayList<>();
+		for (IndexInfo index : indexes) {
+			if (!index.getIndexFields().isEmpty()) {
+				fields.add(new IndexedField(index.getIndexFields().get(0).getKey(), index.getCollation().orElse(null)));
+			}
+		}
+		this.indexedFields.put(collection, Collections.unmodifiableList(fields));
+	}
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+		BsonDocument command = event.getCommand();
+		String name = event.getCommandName();
+
+		switch (name) {
+			case "find":
+				check(command.getString(name).getValue(), command.getDocument("filter", NO_FILTER), command);
+				break;
+			case "count":
+			case "findAndModify":
+			case "findandmodify":
+				check(command.getString(name).getValue(), command.getDocument("query", NO_FILTER), command);
+				break;
+			case "aggregate":
+				BsonArray pipeline = command.getArray("pipeline", new BsonArray());
+				if (command.isString(name) && !pipeline.isEmpty() && pipeline.get(0).asDocument().containsKey("$match")) {
+					check(command.getString(name).getValue(), pipeline.get(0).asDocument().getDocument("$match"), command);
+				}
+				break;
+			case "update":
+			case "delete":
+				for (BsonValue statement : command.getArray(name + "s", new BsonArray())) {
+					check(command.getString(name).getValue(), statement.asDocument().getDocument("q", NO_FILTER),
+							statement.asDocument());
+				}
+				break;
+			default:
+		}
+	}
+
+	/**
+	 * Count {@code filter}, sent to {@code collection} with the collation in {@code options}, if it uses no index.
+	 */
+	private void check(String collection, BsonDocument filter, BsonDocument options) {
+		List<IndexedField> indexes = this.indexedFields.get(collection);
+		if (filter.isEmpty() || indexes == null) {
+			return;
+		}
+		String collation = collation(
+				options.containsKey("collation") ? Document.parse(options.getDocument("collation").toJson()) : null);
+		if (indexed(filter, indexes, collation)) {
+			return;
+		}
+
+		Set<String> fields = new TreeSet<>();
+		fields(filter, fields);
+		String shape = String.join(",", fields);
+
+		this.registry.counter("mongodb.queries.unindexed", "collection", collection, "fields", shape).increment();
+		if (this.reported.add(collection + ":" + shape)) {
+			log.warn("Query on {} filtering on [{}] uses no index and scans the collection", collection, shape);
+		}
+	}
+
+	private static boolean indexed(BsonDocument filter, List<IndexedField> indexes, String collation) {
+		if (filter.containsKey("$text") || filter.containsKey("_id")) {
+			return true;
+		}
+		for (String field : filter.keySet()) {
+			if (field.equals("$and")) {
+				for (BsonValue clause : filter.getArray(field)) {
+					if (indexed(clause.asDocument(), indexes, collation)) {
+						return true;
+					}
+				}
+			} else if (!field.startsWith("$") && !scans(filter.get(field))) {
+				for (IndexedField index : indexes) {
+					if (index.field.equals(field) && index.collation.equals(collation)) {
+						return true;
+					}
+				}
+			}
+		}
+		if (filter.containsKey("$or")) {
+			for (BsonValue branch : filter.getArray("$or")) {
+				if (!indexed(branch.asDocument(), indexes, collation)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Whether {@code condition} is a regular expression no index can narrow down: unanchored or case-insensitive.
+	 */
+	private static boolean scans(BsonValue condition) {
+		BsonValue regex = condition;
+		String options = "";
+		if (condition.isDocument() && condition.asDocument().containsKey("$regex")) {
+			regex = condition.asDocument().get("$regex");
+			options = condition.asDocument().getString("$options", new BsonString("")).getValue();
+		}
+		if (regex.isRegularExpression()) {
+			options += regex.asRegularExpression().getOptions();
+			regex = new BsonString(regex.asRegularExpression().getPattern());
+		} else if (regex == condition || !regex.isString()) {
+			return false;
+		}
+		String pattern = regex.asString().getValue();
+		return !(pattern.startsWith("^") || pattern.startsWith("\\A")) || options.contains("i");
+	}
+
+	private static void fields(BsonDocument filter, Set<String> fields) {
+		for (Map.Entry<String, BsonValue> criterion : filter.entrySet()) {
+			if (!criterion.getKey().startsWith("$")) {
+				fields.add(criterion.getKey());
+			} else if (criterion.getValue().isArray()) {
+				for (BsonValue clause : criterion.getValue().asArray()) {
+					if (clause.isDocument()) {
+						fields(clause.asDocument(), fields);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * What decides whether two strings are equal under {@code collation}: its locale and strength.
+	 */
+	private static String collation(Document collation) {
+		if (collation == null || "simple".equals(collation.getString("locale"))) {
+			return "simple";
+		}
+		Object strength = collation.get("strength");
+		return collation.getString("locale") + "/" + (strength == null ? 3 : ((Number) strength).intValue());
+	}
+
+	/**
+	 * The first field of an index, and the collation it compares strings under.
+	 */
+	private static class IndexedField {
+
+		final String field;
+		final String collation;
+
+		IndexedField(String field, Document collation) {
+			this.field = field;
+			this.collation = collation(collation);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.Metrics;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.ReactiveFluentMongoOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+
+/**
+ * Runs the searches of {@link InventoryService} that go to MongoDB.
+ */
+@DataMongoTest
+@Import({ InventoryService.class, ItemSearchIndex.class, ItemGridIndex.class, ItemFacetsCache.class,
+		SimpleMeterRegistry.class })
+class InventoryServiceTest {
+
+	static final String[][] SEARCHES = { //
+			{ null, null }, { "alarm", null }, { null, "KIDS" }, { "smurf", "kids" }, { "alf", "tray" }, { "lamp", "x" } };
+
+	@Autowired InventoryService inventoryService;
+
+	@Autowired ItemRepository repository;
+
+	@Autowired ReactiveMongoOperations operations;
+
+	@Autowired ItemSearchIndex searchIndex;
+
+	@Autowired ItemGridIndex gridIndex;
+
+	@Autowired ItemFacetsCache facetsCache;
+
+	@BeforeEach
+	void setUp() {
+		this.repository.deleteAll() //
+				.thenMany(this.repository.saveAll(Arrays.asList( //
+						new Item("Alf alarm clock", "kids clock", 19.99), //
+						new Item("Smurf TV tray", "kids TV tray", 24.99), //
+						new Item("Lava lamp", "groovy", 9.99)))) //
+				.blockLast();
+	}
+
+	@Test
+	void searchByExampleMatchesTheCompiledQueries() {
+		for (String[] search : SEARCHES) {
+			for (boolean useAnd : new boolean[] { true, false }) {
+				List<Item> expected = this.operations.find(ItemSearchQuery.of(search[0], search[1], useAnd), Item.class) //
+						.collectList() //
+						.block();
+
+				List<Item> found = this.inventoryService.searchByExample(search[0], search[1], useAnd) //
+						.collectList() //
+						.block();
+				assertThat(ids(found)) //
+						.as("name %s, description %s, useAnd %s", search[0], search[1], useAnd) //
+						.containsExactlyInAnyOrderElementsOf(ids(expected));
+			}
+		}
+	}
+
+	@Test
+	void searchMatchesANameOnItsOwnWithItsCase() {
+		assertThat(this.inventoryService.search("alarm", null, true).collectList().block()) //
+				.extracting(Item::getName) //
+				.containsExactly("Alf alarm clock");
+		assertThat(this.inventoryService.search("ALARM", null, true).collectList().block()).isEmpty();
+		assertThat(this.inventoryService.search("ALARM", null, true, null).collectList().block()) //
+				.extracting(Item::getName) //
+				.containsExactly("Alf alarm clock");
+	}
+
+	@Test
+	void orSearchesFindTheSameItemsWithOrWithoutParallelQueries() {
+		SimpleMeterRegistry parallelRegistry = new SimpleMeterRegistry();
+		SimpleMeterRegistry singleRegistry = new SimpleMeterRegistry();
+		InventoryService parallel = service(parallelRegistry, true);
+		InventoryService single = service(singleRegistry, false);
+
+		for (String[] search : SEARCHES) {
+			List<Item> expected = this.operations.find(ItemSearchQuery.of(search[0], search[1], false), Item.class) //
+					.collectList() //
+					.block();
+
+			for (InventoryService service : new InventoryService[] { parallel, single }) {
+				assertThat(ids(service.search(search[0], search[1], false, null).collectList().block())) //
+						.as("name %s, description %s", search[0], search[1]) //
+						.containsExactlyInAnyOrderElementsOf(ids(expected));
+				assertThat(service.searchSummaries(search[0], search[1], false, null).map(ItemSummary::getId) //
+						.collectList().block()) //
+								.as("summaries for name %s, description %s", search[0], search[1]) //
+								.containsExactlyInAnyOrderElementsOf(ids(expected));
+			}
+		}
+		// Three of the searches name both fields, each run once per method.
+		assertThat(parallelRegistry.get("inventory.search.branch").tag("field", "name").timers().stream() //
+				.mapToLong(Timer::count).sum()).isEqualTo(6);
+		assertThat(parallelRegistry.get("inventory.search.branch").tag("field", "description").timers().stream() //
+				.mapToLong(Timer::count).sum()).isEqualTo(6);
+		assertThat(singleRegistry.find("inventory.search.branch").timers()).isEmpty();
+
+		assertThat(parallel.search("alf", "kids", false, 1).collectList().block()).hasSize(1);
+	}
+
+	@Test
+	void fluentSummariesMatchTheFluentSearch() {
+		for (String[] search : SEARCHES) {
+			for (boolean useAnd : new boolean[] { true, false }) {
+				List<Item> items = this.inventoryService.searchByFluentExample(search[0], search[1], useAnd) //
+						.collectList() //
+						.block();
+				List<ItemSummary> summaries = this.inventoryService
+						.searchSummariesByFluentExample(search[0], search[1], useAnd) //
+						.collectList() //
+						.block();
+
+				assertThat(summaries) //
+						.as("name %s, description %s, useAnd %s", search[0], search[1], useAnd) //
+						.extracting(ItemSummary::getId, ItemSummary::getName, ItemSummary::getPrice) //
+						.containsExactlyInAnyOrderElementsOf(items.stream() //
+								.map(item -> tuple(item.getId(), item.getName(), item.getPrice())) //
+								.collect(Collectors.toList()));
+			}
+		}
+	}
+
+	@Test
+	void findNearAsksMongoForNoMoreThanTheLimit() {
+		this.operations.indexOps(Item.class) //
+				.ensureIndex(new GeospatialIndex("location").typed(GeoSpatialIndexType.GEO_2DSPHERE)) //
+				.block();
+		this.repository.saveAll(Flux.range(0, 10).map(i -> located("near " + i, 0.01 * i, 1))) //
+				.concatWith(this.repository.save(located("out of stock", 0.001, 0))) //
+				.concatWith(this.repository.save(located("far away", 20, 1))) //
+				.blockLast();
+
+		List<GeoResult<Item>> nearby = this.inventoryService
+				.findNear(new Point(0, 0), new Distance(50, Metrics.KILOMETERS), 3) //
+				.collectList() //
+				.block();
+
+		assertThat(nearby).extracting(result -> result.getContent().getName()) //
+				.containsExactly("near 0", "near 1", "near 2");
+		assertThat(nearby.get(1).getDistance().getMetric()).isEqualTo(Metrics.KILOMETERS);
+		assertThat(nearby.get(1).getDistance().getValue()).isCloseTo(1.11, within(0.01));
+	}
+
+	@Test
+	void facetsCountEachBoundaryInTheRangeItStarts() {
+		this.repository.deleteAll() //
+				.thenMany(this.repository.saveAll(Flux.range(0, ItemFacetsCacheTest.PRICES.length) //
+						.map(i -> ItemFacetsCacheTest.priced(i, ItemFacetsCacheTest.PRICES[i])))) //
+				.blockLast();
+
+		ItemFacets facets = this.inventoryService.facets().block();
+
+		assertThat(ItemFacetsCacheTest.prices(facets)).containsExactly(2L, 2L, 1L, 1L, 2L, 2L);
+		assertThat(facets.getRegions()).containsEntry("even", 5L).containsEntry("odd", 5L);
+		assertThat(facets.getActive()).isEqualTo(5);
+		assertThat(facets.getInactive()).isEqualTo(5);
+	}
+
+	private InventoryService service(SimpleMeterRegistry registry, boolean parallelOr) {
+		return new InventoryService(this.repository, (ReactiveFluentMongoOperations) this.operations, this.operations, //
+				this.searchIndex, this.gridIndex, this.facetsCache, registry, InventoryService.SearchMode.CONTAINS, 100, //
+				1000, Duration.ofSeconds(2), parallelOr);
+	}
+
+	private static Item located(String name, double longitude, int availableUnits) {
+		Item item = new Item(name, "somewhere", 1.0);
+		item.setLocation(new Point(longitude, 0));
+		item.setAvailableUnits(availableUnits);
+		return item;
+	}
+
+	private static List<String> ids(List<Item> items) {
+		return items.stream().map(Item::getId).collect(Collectors.toList());
+	}
+}
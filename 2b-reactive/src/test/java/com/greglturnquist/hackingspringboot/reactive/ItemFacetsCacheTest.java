@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.data.mongodb.core.query.Criteria.*;
+import static org.springframework.data.mongodb.core.query.Query.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * Checks that {@link ItemFacetsCache} keeps its counts right through saves and deletes of every kind.
+ */
+@DataMongoTest(properties = "inventory.facets.cache.enabled=true")
+@Import(ItemFacetsCache.class)
+class ItemFacetsCacheTest {
+
+	/** One item on each side of every price boundary. */
+	static final double[] PRICES = { 0.0, 9.99, 10.0, 24.99, 25.0, 99.99, 100.0, 249.99, 250.0, 1000.0 };
+
+	@Autowired ItemFacetsCache facetsCache;
+
+	@Autowired ItemRepository repository;
+
+	@Autowired ReactiveMongoOperations operations;
+
+	@BeforeEach
+	void setUp() {
+		this.repository.deleteAll() //
+				.thenMany(this.repository.saveAll(Flux.range(0, PRICES.length).map(i -> priced(i, PRICES[i])))) //
+				.blockLast();
+		awaitLoaded();
+	}
+
+	@Test
+	void countsEachBoundaryInTheRangeItStarts() {
+		ItemFacets facets = this.facetsCache.snapshot();
+
+		assertThat(prices(facets)).containsExactly(2L, 2L, 1L, 1L, 2L, 2L);
+		assertThat(facets.getRegions()).containsEntry("even", 5L).containsEntry("odd", 5L);
+		assertThat(facets.getActive()).isEqualTo(5);
+		assertThat(facets.getInactive()).isEqualTo(5);
+	}
+
+	@Test
+	void movesASavedItemToItsNewCounts() {
+		Item item = this.repository.findAll().filter(found -> found.getPrice() == 9.99).blockFirst();
+		item.setPrice(10.0);
+		item.setDistributorRegion(null);
+		item.setActive(true);
+		this.repository.save(item).block();
+
+		ItemFacets facets = this.facetsCache.snapshot();
+		assertThat(prices(facets)).containsExactly(1L, 3L, 1L, 1L, 2L, 2L);
+		assertThat(facets.getRegions()).containsEntry("odd", 4L).containsEntry(ItemFacets.NO_REGION, 1L);
+		assertThat(facets.getActive()).isEqualTo(6);
+	}
+
+	@Test
+	void followsDeletesById() {
+		this.repository.delete(this.repository.findAll().filter(found -> found.getPrice() == 250.0).blockFirst())
+				.block();
+
+		assertThat(prices(this.facetsCache.snapshot())).containsExactly(2L, 2L, 1L, 1L, 2L, 1L);
+	}
+
+	@Test
+	void countsAgainAfterDeletesByCriteria() {
+		this.operations.remove(query(where("price").gte(100.0)), Item.class).block();
+		awaitLoaded();
+
+		assertThat(prices(this.facetsCache.snapshot())).containsExactly(2L, 2L, 1L, 1L, 0L, 0L);
+	}
+
+	@Test
+	void countsAgainAfterDeleteAll() {
+		this.repository.deleteAll().block();
+		awaitLoaded();
+
+		ItemFacets facets = this.facetsCache.snapshot();
+		assertThat(prices(facets)).containsOnly(0L);
+		assertThat(facets.getRegions()).isEmpty();
+		assertThat(facets.getActive() + facets.getInactive()).isZero();
+	}
+
+	@Test
+	void itemsDeletedWhileCountingAreNotCounted() {
+		Item ghost = priced(0, 9.99);
+		ghost.setId("ghost");
+		Sinks.Many<Item> read = Sinks.many().unicast().onBackpressureBuffer();
+		ReactiveMongoOperations operations = mock(ReactiveMongoOperations.class);
+		when(operations.find(any(Query.class), eq(Item.class))).thenReturn(read.asFlux());
+
+		ItemFacetsCache facetsCache = new ItemFacetsCache(operations, true);
+		facetsCache.load();
+		facetsCache.onAfterDelete(new AfterDeleteEvent<>(new org.bson.Document("_id", "ghost"), Item.class, "item"));
+		read.tryEmitNext(ghost);
+		read.tryEmitComplete();
+
+		assertThat(facetsCache.isLoaded()).isTrue();
+		assertThat(prices(facetsCache.snapshot())).containsOnly(0L);
+	}
+
+	static Item priced(int i, double price) {
+		Item item = new Item("item " + i, "priced at " + price, price);
+		item.setDistributorRegion(i % 2 == 0 ? "even" : "odd");
+		item.setActive(i % 2 == 0);
+		return item;
+	}
+
+	static List<Long> prices(ItemFacets facets) {
+		return facets.getPrices().stream().map(ItemFacets.PriceRange::getCount).collect(Collectors.toList());
+	}
+
+	private void awaitLoaded() {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!this.facetsCache.isLoaded()) {
+			assertThat(System.nanoTime()).as("facets never counted").isLessThan(deadline);
+			Thread.yield();
+		}
+	}
+}
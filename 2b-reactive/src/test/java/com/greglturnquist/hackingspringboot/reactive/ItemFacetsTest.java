@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks where {@link ItemFacets} puts prices, and how it reads the {@code $facet} result.
+ */
+class ItemFacetsTest {
+
+	@Test
+	void eachBoundaryStartsItsRange() {
+		assertThat(ItemFacets.priceRange(0.0)).isEqualTo(0);
+		assertThat(ItemFacets.priceRange(9.99)).isEqualTo(0);
+		assertThat(ItemFacets.priceRange(10.0)).isEqualTo(1);
+		assertThat(ItemFacets.priceRange(24.99)).isEqualTo(1);
+		assertThat(ItemFacets.priceRange(25.0)).isEqualTo(2);
+		assertThat(ItemFacets.priceRange(249.99)).isEqualTo(4);
+		assertThat(ItemFacets.priceRange(250.0)).isEqualTo(5);
+		assertThat(ItemFacets.priceRange(10_000.0)).isEqualTo(5);
+	}
+
+	@Test
+	void pricesBelowTheFirstBoundaryCountInTheOpenRange() {
+		assertThat(ItemFacets.priceRange(-0.01)).isEqualTo(ItemFacets.PRICE_BOUNDARIES.length - 1);
+	}
+
+	@Test
+	void readsTheBucketsByTheirLowerBoundary() {
+		Document result = new Document("regions", Arrays.asList( //
+				new Document("_id", "east").append("count", 2), //
+				new Document("_id", null).append("count", 1))) //
+						.append("prices", Arrays.asList( //
+								new Document("_id", 0.0).append("count", 3), //
+								new Document("_id", 100.0).append("count", 1L), //
+								new Document("_id", ItemFacets.OPEN_PRICE_RANGE).append("count", 2))) //
+						.append("active", Arrays.asList( //
+								new Document("_id", true).append("count", 4), //
+								new Document("_id", false).append("count", 2)));
+
+		ItemFacets facets = ItemFacets.of(result);
+
+		assertThat(facets.getRegions()).containsEntry("east", 2L).containsEntry(ItemFacets.NO_REGION, 1L).hasSize(2);
+		assertThat(facets.getPrices()).extracting(ItemFacets.PriceRange::getCount).containsExactly(3L, 0L, 0L, 0L, 1L, 2L);
+		assertThat(facets.getPrices().get(4).getTo()).isEqualTo(250.0);
+		assertThat(facets.getPrices().get(5).getFrom()).isEqualTo(250.0);
+		assertThat(facets.getPrices().get(5).getTo()).isNull();
+		assertThat(facets.getActive()).isEqualTo(4);
+		assertThat(facets.getInactive()).isEqualTo(2);
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.data.mongodb.core.query.Criteria.*;
+import static org.springframework.data.mongodb.core.query.Query.*;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import reactor.core.publisher.Sinks;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.Metrics;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+
+/**
+ * Checks the items {@link ItemGridIndex} finds near a point, before and after deletes of every kind.
+ */
+@DataMongoTest(properties = "inventory.geo.grid.enabled=true")
+@Import(ItemGridIndex.class)
+class ItemGridIndexTest {
+
+	static final Point ORIGIN = new Point(0, 0);
+
+	static final Distance TEN_KILOMETERS = new Distance(10, Metrics.KILOMETERS);
+
+	@Autowired ItemGridIndex gridIndex;
+
+	@Autowired ItemRepository repository;
+
+	@Autowired ReactiveMongoOperations operations;
+
+	@BeforeEach
+	void setUp() {
+		this.repository.deleteAll() //
+				.thenMany(this.repository.saveAll(Arrays.asList( //
+						located("one km", 0.009, 1), //
+						located("five km", 0.045, 1), //
+						located("out of stock", 0.001, 0), //
+						located("twenty km", 0.18, 1), //
+						new Item("nowhere", "no location", 1.0)))) //
+				.blockLast();
+		awaitLoaded();
+	}
+
+	@Test
+	void findsItemsInStockNearestFirst() {
+		List<GeoResult<Item>> nearby = this.gridIndex.near(ORIGIN, TEN_KILOMETERS, 10);
+
+		assertThat(nearby).extracting(result -> result.getContent().getName()).containsExactly("one km", "five km");
+		assertThat(nearby.get(0).getDistance().getValue()).isCloseTo(1.0, within(0.01));
+		assertThat(nearby.get(0).getDistance().getMetric()).isEqualTo(Metrics.KILOMETERS);
+	}
+
+	@Test
+	void stopsAtTheLimit() {
+		assertThat(this.gridIndex.near(ORIGIN, TEN_KILOMETERS, 1)) //
+				.extracting(result -> result.getContent().getName()).containsExactly("one km");
+	}
+
+	@Test
+	void leavesLargeAreasToMongo() {
+		assertThat(this.gridIndex.near(ORIGIN, new Distance(1000, Metrics.KILOMETERS), 10)).isNull();
+		assertThat(this.gridIndex.near(new Point(0, 89.9), TEN_KILOMETERS, 10)).isNull();
+	}
+
+	@Test
+	void followsSavesAndDeletesById() {
+		Item fiveKm = this.repository.findAll().filter(item -> item.getName().equals("five km")).blockFirst();
+		fiveKm.setLocation(new Point(0.09, 0));
+		this.repository.save(fiveKm).block();
+
+		assertThat(this.gridIndex.near(ORIGIN, TEN_KILOMETERS, 10)) //
+				.extracting(result -> result.getContent().getName()).containsExactly("one km");
+
+		this.repository.delete(this.repository.findAll().filter(item -> item.getName().equals("one km")).blockFirst())
+				.block();
+
+		assertThat(this.gridIndex.near(ORIGIN, TEN_KILOMETERS, 10)).isEmpty();
+	}
+
+	@Test
+	void reloadsAfterDeleteAll() {
+		this.repository.deleteAll().block();
+		awaitLoaded();
+
+		assertThat(this.gridIndex.near(ORIGIN, new Distance(50, Metrics.KILOMETERS), 10)).isEmpty();
+	}
+
+	@Test
+	void reloadsAfterDeletesByCriteria() {
+		this.operations.remove(query(where("name").regex("km$")), Item.class).block();
+		awaitLoaded();
+
+		assertThat(this.gridIndex.near(ORIGIN, new Distance(50, Metrics.KILOMETERS), 10)).isEmpty();
+	}
+
+	@Test
+	void itemsDeletedWhileLoadingDoNotComeBack() {
+		Item ghost = located("ghost", 0.009, 1);
+		ghost.setId("ghost");
+		Sinks.Many<Item> read = Sinks.many().unicast().onBackpressureBuffer();
+		ItemRepository repository = mock(ItemRepository.class);
+		when(repository.findAll()).thenReturn(read.asFlux());
+
+		ItemGridIndex gridIndex = new ItemGridIndex(repository, true, 0.5, 64);
+		gridIndex.load();
+		gridIndex.onAfterDelete(new AfterDeleteEvent<>(new org.bson.Document("_id", "ghost"), Item.class, "item"));
+		read.tryEmitNext(ghost);
+		read.tryEmitComplete();
+
+		assertThat(gridIndex.isLoaded()).isTrue();
+		assertThat(gridIndex.near(ORIGIN, TEN_KILOMETERS, 10)).isEmpty();
+	}
+
+	private static Item located(String name, double longitude, int availableUnits) {
+		Item item = new Item(name, "somewhere", 1.0);
+		item.setLocation(new Point(longitude, 0));
+		item.setAvailableUnits(availableUnits);
+		return item;
+	}
+
+	private void awaitLoaded() {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!this.gridIndex.isLoaded()) {
+			assertThat(System.nanoTime()).as("grid never loaded").isLessThan(deadline);
+			Thread.yield();
+		}
+	}
+}
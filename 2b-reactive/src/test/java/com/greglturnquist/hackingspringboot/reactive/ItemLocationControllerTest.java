@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import reactor.core.publisher.Flux;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.Metrics;
+import org.springframework.data.geo.Point;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Checks that {@code /items/near} streams one JSON document per item, nearest first.
+ */
+@WebFluxTest(ItemLocationController.class)
+class ItemLocationControllerTest {
+
+	@Autowired WebTestClient client;
+
+	@MockBean InventoryService inventoryService;
+
+	@Test
+	void streamsEachResultOnItsOwnLine() {
+		when(this.inventoryService.findNear(new Point(4.9, 52.4), new Distance(10, Metrics.KILOMETERS), 2))
+				.thenReturn(Flux.just( //
+						new GeoResult<>(new Item("Alf alarm clock", "kids clock", 19.99), new Distance(1.5, Metrics.KILOMETERS)), //
+						new GeoResult<>(new Item("Smurf TV tray", "kids TV tray", 24.99), new Distance(7.25, Metrics.KILOMETERS))));
+
+		this.client.get().uri("/items/near?longitude=4.9&latitude=52.4&limit=2") //
+				.accept(MediaType.APPLICATION_NDJSON) //
+				.exchange() //
+				.expectStatus().isOk() //
+				.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON) //
+				.expectBody(String.class) //
+				.consumeWith(exchangeResult -> {
+					String[] lines = exchangeResult.getResponseBody().split("\n");
+					assertThat(lines).hasSize(2);
+					assertThat(lines[0]).contains("\"name\":\"Alf alarm clock\"").contains("\"value\":1.5");
+					assertThat(lines[1]).contains("\"name\":\"Smurf TV tray\"").contains("\"value\":7.25");
+				});
+	}
+
+	@Test
+	void searchesTheGivenRadius() {
+		when(this.inventoryService.findNear(new Point(4.9, 52.4), new Distance(2.5, Metrics.KILOMETERS), null))
+				.thenReturn(Flux.empty());
+
+		this.client.get().uri("/items/near?longitude=4.9&latitude=52.4&kilometers=2.5") //
+				.accept(MediaType.APPLICATION_NDJSON) //
+				.exchange() //
+				.expectStatus().isOk() //
+				.expectBody().isEmpty();
+
+		verify(this.inventoryService).findNear(new Point(4.9, 52.4), new Distance(2.5, Metrics.KILOMETERS), null);
+	}
+}
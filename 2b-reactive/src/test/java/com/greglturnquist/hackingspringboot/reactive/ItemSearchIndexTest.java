@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.data.mongodb.core.query.Criteria.*;
+import static org.springframework.data.mongodb.core.query.Query.*;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import reactor.core.publisher.Sinks;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * Checks that {@link ItemSearchIndex} finds the same items as the equivalent MongoDB query, before and after
+ * deletes of every kind.
+ */
+@DataMongoTest(properties = "inventory.search.index.enabled=true")
+@Import(ItemSearchIndex.class)
+class ItemSearchIndexTest {
+
+	static final String[][] SEARCHES = { //
+			{ null, null }, { "alarm", null }, { "AL", null }, { null, "kids" }, { null, "tray" }, //
+			{ "smurf", "kids" }, { "alf", "tray" }, { "lamp", "nothing" }, { "a.b", null } };
+
+	@Autowired ItemSearchIndex searchIndex;
+
+	@Autowired ItemRepository repository;
+
+	@Autowired ReactiveMongoOperations operations;
+
+	@BeforeEach
+	void setUp() {
+		this.repository.deleteAll() //
+				.thenMany(this.repository.saveAll(Arrays.asList( //
+						new Item("Alf alarm clock", "kids clock", 19.99), //
+						new Item("Smurf TV tray", "kids TV tray", 24.99), //
+						new Item("Lava lamp", "groovy", 9.99), //
+						new Item("a.b", "literal dot", 1.99), //
+						new Item("axb", "regex dot", 1.99)))) //
+				.blockLast();
+		awaitLoaded();
+	}
+
+	@Test
+	void findsWhatMongoFinds() {
+		assertSameAsMongo();
+	}
+
+	@Test
+	void followsDeletesById() {
+		Item lamp = this.repository.findAll().filter(item -> item.getName().equals("Lava lamp")).blockFirst();
+		this.repository.delete(lamp).block();
+
+		assertThat(this.searchIndex.find("lamp", null, true, 100)).isEmpty();
+		assertSameAsMongo();
+	}
+
+	@Test
+	void rebuildsAfterDeleteAll() {
+		this.repository.deleteAll().block();
+		awaitLoaded();
+
+		assertThat(this.searchIndex.size()).isZero();
+		assertSameAsMongo();
+	}
+
+	@Test
+	void rebuildsAfterDeletesByCriteria() {
+		this.operations.remove(query(where("description").regex("kids")), Item.class).block();
+		awaitLoaded();
+
+		assertThat(this.searchIndex.size()).isEqualTo(3);
+		assertSameAsMongo();
+	}
+
+	@Test
+	void itemsDeletedWhileLoadingDoNotComeBack() {
+		Item ghost = new Item("Alf alarm clock", "kids clock", 19.99);
+		ghost.setId("ghost");
+		Item lamp = new Item("Lava lamp", "groovy", 9.99);
+		lamp.setId("lamp");
+		Sinks.Many<Item> read = Sinks.many().unicast().onBackpressureBuffer();
+		ReactiveMongoOperations operations = mock(ReactiveMongoOperations.class);
+		when(operations.find(any(Query.class), eq(Item.class))).thenReturn(read.asFlux());
+
+		ItemSearchIndex index = new ItemSearchIndex(operations, true);
+		index.load();
+		index.onAfterDelete(new AfterDeleteEvent<>(new org.bson.Document("_id", "ghost"), Item.class, "item"));
+		read.tryEmitNext(ghost);
+		read.tryEmitNext(lamp);
+		read.tryEmitComplete();
+
+		assertThat(index.isLoaded()).isTrue();
+		assertThat(index.size()).isEqualTo(1);
+		assertThat(index.find(null, null, true, 1)).containsExactly("lamp");
+	}
+
+	private void assertSameAsMongo() {
+		for (String[] search : SEARCHES) {
+			for (boolean useAnd : new boolean[] { true, false }) {
+				List<String> fromMongo = this.operations.find(ItemSearchQuery.of(search[0], search[1], useAnd), Item.class) //
+						.map(Item::getId) //
+						.collectList() //
+						.block();
+				assertThat(this.searchIndex.find(search[0], search[1], useAnd, 100)) //
+						.as("name %s, description %s, useAnd %s", search[0], search[1], useAnd) //
+						.containsExactlyInAnyOrderElementsOf(fromMongo);
+			}
+		}
+	}
+
+	private void awaitLoaded() {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!this.searchIndex.isLoaded()) {
+			assertThat(System.nanoTime()).as("index never loaded").isLessThan(deadline);
+			Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.springframework.data.mongodb.core.query.Criteria.*;
+import static org.springframework.data.mongodb.core.query.Query.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.ExampleMatcher.StringMatcher;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * Compares the per-request cost of turning search terms into the filter document sent to MongoDB: deriving it
+ * from an {@link Example} probe, as the searches used to, against binding a compiled {@link ItemSearchQuery}.
+ * Both include mapping the query against {@link Item}, as the template does before every find.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath org.openjdk.jmh.Main ItemSearchQueryBenchmark -prof gc"}, or {@link #main} from an
+ * IDE. The {@code gc} profiler adds the bytes allocated per search ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemSearchQueryBenchmark {
+
+	@Param({ "true", "false" }) boolean useAnd;
+
+	String name = "alarm";
+	String description = "kids";
+
+	MongoMappingContext mappingContext;
+	MongoPersistentEntity<?> entity;
+	QueryMapper queryMapper;
+
+	@Setup
+	public void setUp() {
+		// The test logback.xml traces org.springframework, which would dominate the timings.
+		LoggingSystem.get(getClass().getClassLoader()).setLogLevel("org.springframework", LogLevel.WARN);
+
+		this.mappingContext = new MongoMappingContext();
+		this.mappingContext.afterPropertiesSet();
+		this.entity = this.mappingContext.getRequiredPersistentEntity(Item.class);
+
+		MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, this.mappingContext);
+		converter.afterPropertiesSet();
+		this.queryMapper = new QueryMapper(converter);
+	}
+
+	/**
+	 * What {@code searchByExample} did before: a new probe, matcher and example for every search.
+	 */
+	@Benchmark
+	public Document example() {
+		Item item = new Item(this.name, this.description, 0.0);
+
+		ExampleMatcher matcher = (this.useAnd //
+				? ExampleMatcher.matchingAll() //
+				: ExampleMatcher.matchingAny()) //
+						.withStringMatcher(StringMatcher.CONTAINING) //
+						.withIgnoreCase() //
+						.withIgnorePaths("price");
+
+		return map(query(byExample(Example.of(item, matcher))));
+	}
+
+	@Benchmark
+	public Document compiled() {
+		return map(ItemSearchQuery.of(this.name, this.description, this.useAnd));
+	}
+
+	private Document map(Query query) {
+		return this.queryMapper.getMappedObject(query.getQueryObject(), this.entity);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder() //
+				.include(ItemSearchQueryBenchmark.class.getSimpleName()) //
+				.addProfiler("gc") //
+				.build()).run();
+	}
+}
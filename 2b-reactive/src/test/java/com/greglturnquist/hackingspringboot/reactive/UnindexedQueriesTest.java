@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Arrays;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+
+/**
+ * Feeds commands to {@link UnindexedQueries} and checks which ones it counts.
+ */
+class UnindexedQueriesTest {
+
+	SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	UnindexedQueries queries = new UnindexedQueries(this.registry);
+
+	@BeforeEach
+	void setUp() {
+		this.queries.indexed("item", Arrays.asList( //
+				IndexInfo.indexInfoOf(Document.parse("{ key: { _id: 1 }, name: '_id_' }")), //
+				IndexInfo.indexInfoOf(Document.parse("{ key: { name: 1, price: 1 }, name: 'name_1_price_1' }")), //
+				IndexInfo.indexInfoOf(Document.parse( //
+						"{ key: { description: 1 }, name: 'description_en_2', collation: { locale: 'en', strength: 2 } }"))));
+	}
+
+	@Test
+	void indexedQueriesAreNotCounted() {
+		send("{ find: 'item', filter: { name: 'Alf alarm clock' } }");
+		send("{ find: 'item', filter: { _id: 'abc' } }");
+		send("{ find: 'item', filter: {} }");
+		send("{ find: 'item', filter: { $or: [ { name: 'a' }, { _id: 'b' } ] } }");
+		send("{ find: 'item', filter: { description: 'kids', price: 5 }, collation: { locale: 'en', strength: 2 } }");
+		send("{ find: 'cart', filter: { anything: 1 } }");
+
+		assertThat(this.registry.find("mongodb.queries.unindexed").counters()).isEmpty();
+	}
+
+	@Test
+	void collectionScansAreCountedByShape() {
+		send("{ find: 'item', filter: { price: { $gt: 10 } } }");
+		send("{ count: 'item', query: { price: 5 } }");
+		send("{ find: 'item', filter: { $or: [ { name: 'a' }, { price: 1 } ] } }");
+		send("{ find: 'item', filter: { description: 'kids' } }");
+		send("{ delete: 'item', deletes: [ { q: { price: 1 }, limit: 0 } ] }");
+
+		assertThat(count("price")).isEqualTo(3);
+		assertThat(count("name,price")).isEqualTo(1);
+		assertThat(count("description")).isEqualTo(1);
+	}
+
+	@Test
+	void regexesAreIndexedOnlyWhenAnchoredAndCaseSensitive() {
+		send("{ find: 'item', filter: { name: { $regex: '^Alf' } } }");
+		send("{ find: 'item', filter: { name: /^Alf/ } }");
+		send("{ find: 'item', filter: { name: { $regex: 'alarm', $options: 'i' } } }");
+		send("{ find: 'item', filter: { name: /alarm/ } }");
+		send("{ find: 'item', filter: { name: /^alf/i } }");
+		send("{ find: 'item', filter: { $or: [ { name: { $regex: 'alf', $options: 'i' } }, { name: 'b' } ] } }");
+
+		assertThat(count("name")).isEqualTo(4);
+	}
+
+	private void send(String command) {
+		BsonDocument document = BsonDocument.parse(command);
+		this.queries.commandStarted(new CommandStartedEvent(1,
+				new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress())), "test",
+				document.getFirstKey(), document));
+	}
+
+	private double count(String fields) {
+		return this.registry.get("mongodb.queries.unindexed").tags("collection", "item", "fields", fields).counter()
+				.count();
+	}
+}
@@ -33,10 +33,14 @@ class InventoryService {
 
     private CartRepository cartRepository;
 
+    private InventorySnapshot inventorySnapshot;
+
     InventoryService(ItemRepository repository,
-                     CartRepository cartRepository) {
+                     CartRepository cartRepository,
+                     InventorySnapshot inventorySnapshot) {
         this.itemRepository = repository;
         this.cartRepository = cartRepository;
+        this.inventorySnapshot = inventorySnapshot;
     }
 
     public Mono<Cart> getCart(String cartId) {
@@ -44,7 +48,7 @@ class InventoryService {
     }
 
     public Flux<Item> getInventory() {
-        return this.itemRepository.findAll();
+        return this.inventorySnapshot.getItems();
     }
 
     Mono<Item> saveItem(Item newItem) {
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.springframework.data.mongodb.core.ChangeStreamOptions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions.ChangeStreamOptionsBuilder;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory copy of the whole inventory for the home page.
+ * <p>
+ * Loaded once the application is ready, then kept current two ways: a MongoDB change stream on the
+ * item collection (which also sees writes from other processes), and this application's own
+ * after-save/after-delete events, which are all that is left when change streams are unavailable,
+ * as with a standalone or embedded MongoDB. Both are idempotent, so receiving a change twice is
+ * harmless. Until a load completes, reads go to the database.
+ * <p>
+ * {@link ItemMirror} keeps a load from bringing back an item deleted while it read, reloads after
+ * deletes that don't name a single item, such as {@code deleteAll()}, and retries failed loads. A
+ * failed change stream reconnects with backoff, resuming after the last change it delivered; if it
+ * never delivered one, the copy is reloaded instead since changes made in between would otherwise
+ * be lost.
+ */
+@Component
+class InventorySnapshot extends ItemMirror implements DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(InventorySnapshot.class);
+
+	// MongoDB answers these when it cannot run change streams at all, as on a standalone server.
+	private static final int CHANGE_STREAMS_NEED_REPLICA_SET = 40573;
+	private static final int UNRECOGNIZED_PIPELINE_STAGE = 40324;
+
+	private final ReactiveMongoOperations operations;
+	private final ItemRepository repository;
+	private final Duration reconnectBackoff;
+	private final Map<String, Item> items = new LinkedHashMap<>(); // guarded by lock
+	private volatile List<Item> snapshot;
+	private volatile BsonValue resumeToken;
+	private final AtomicBoolean following = new AtomicBoolean();
+	private volatile Disposable changeStream;
+
+	InventorySnapshot(ReactiveMongoOperations operations, ItemRepository repository, //
+			@Value("${inventory.snapshot.reconnect-backoff:1s}") Duration reconnectBackoff) {
+		super("the inventory snapshot", true, reconnectBackoff);
+		this.operations = operations;
+		this.repository = repository;
+		this.reconnectBackoff = reconnectBackoff;
+	}
+
+	Flux<Item> getItems() {
+		List<Item> current = this.snapshot;
+		return current != null ? Flux.fromIterable(current) : this.repository.findAll();
+	}
+
+	@Override
+	void load() {
+		// Reloads come through here too; the change stream only needs starting once.
+		if (this.following.compareAndSet(false, true)) {
+			// Subscribe first so no change made during the initial read is missed.
+			this.changeStream = changes() //
+					.subscribe(this::apply, error -> log.info( //
+							"Change streams unavailable ({}); inventory snapshot follows this application's writes only",
+							error.getMessage()));
+		}
+		super.load();
+	}
+
+	@Override
+	public void destroy() {
+		if (this.changeStream != null) {
+			this.changeStream.dispose();
+		}
+	}
+
+	@Override
+	protected Flux<Item> read() {
+		return this.repository.findAll();
+	}
+
+	@Override
+	protected void put(Item item) {
+		this.items.put(item.getId(), item);
+	}
+
+	@Override
+	protected void remove(String id) {
+		this.items.remove(id);
+	}
+
+	@Override
+	protected void clear() {
+		this.items.clear();
+	}
+
+	/**
+	 * Swap in an immutable copy, so readers never lock or see a half-applied change. Writes to the
+	 * catalog are rare; page views are not.
+	 */
+	@Override
+	protected void changed() {
+		this.snapshot = isLoaded() ? Collections.unmodifiableList(new ArrayList<>(this.items.values())) : null;
+	}
+
+	private Flux<ChangeStreamEvent<Item>> changes() {
+		return Flux.defer(() -> {
+			ChangeStreamOptionsBuilder options = builder().fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+			if (this.resumeToken != null) {
+				options.resumeAfter(this.resumeToken);
+			}
+			return this.operations.changeStream(this.operations.getCollectionName(Item.class), options.build(),
+					Item.class);
+		}) //
+				.doOnNext(event -> this.resumeToken = event.getResumeToken()) //
+				.retryWhen(Retry.backoff(Long.MAX_VALUE, this.reconnectBackoff) //
+						.maxBackoff(this.reconnectBackoff.multipliedBy(60)) //
+						.filter(error -> !unsupported(error)) //
+						.doBeforeRetry(signal -> {
+							log.warn("Inventory change stream failed ({}); reconnecting", signal.failure().getMessage());
+							if (this.resumeToken == null) {
+								reload();
+							}
+						}));
+	}
+
+	private void apply(ChangeStreamEvent<Item> event) {
+		if (event.getOperationType() == OperationType.DELETE) {
+			BsonValue id = event.getRaw().getDocumentKey().get("_id");
+			deleted(id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue());
+		} else if (event.getBody() != null) {
+			saved(event.getBody());
+		}
+	}
+
+	private static boolean unsupported(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof MongoCommandException) {
+				int code = ((MongoCommandException) cause).getErrorCode();
+				return code == CHANGE_STREAMS_NEED_REPLICA_SET || code == UNRECOGNIZED_PIPELINE_STAGE;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.MongoCollectionUtils;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.MongoMappingEvent;
+
+/**
+ * Base for in-memory copies of the items, loaded once the application is ready and then kept current from this
+ * application's after-save and after-delete events.
+ * <p>
+ * A delete that doesn't name a single item, such as {@code deleteAll()} or a delete by criteria, empties the copy
+ * and loads it again. Writes can land while a load is reading, so the ids saved or deleted meanwhile are
+ * remembered and what the load read for them is dropped: the hooks already applied something newer. A load
+ * overtaken by a later one is dropped altogether. A failed load is retried with backoff, each attempt remembering
+ * only the writes made since it started.
+ * <p>
+ * Subclasses hold the copy in whatever shape suits their queries. {@link #put}, {@link #remove}, {@link #clear} and
+ * {@link #changed} are always called holding the write lock of {@link #lock}; readers take its read lock, or read
+ * something the subclass publishes safely from {@link #changed}.
+ */
+abstract class ItemMirror extends AbstractMongoEventListener<Item> {
+
+	private static final Logger log = LoggerFactory.getLogger(ItemMirror.class);
+
+	private static final String COLLECTION = MongoCollectionUtils.getPreferredCollectionName(Item.class);
+
+	static final Duration LOAD_RETRY_BACKOFF = Duration.ofSeconds(1);
+
+	protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final String description;
+	private final boolean enabled;
+	private final Duration retryBackoff;
+
+	// All guarded by lock.
+	private final Set<String> changedWhileLoading = new HashSet<>();
+	private long loads;
+	private boolean loading;
+	private Disposable loader;
+
+	private volatile boolean loaded;
+
+	ItemMirror(String description, boolean enabled, Duration retryBackoff) {
+		this.description = description;
+		this.enabled = enabled;
+		this.retryBackoff = retryBackoff;
+	}
+
+	/**
+	 * Whether a load has completed since the copy was last emptied. Until then, callers should query the database.
+	 */
+	boolean isLoaded() {
+		return this.loaded;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	void load() {
+		if (!this.enabled) {
+			return;
+		}
+		this.lock.writeLock().lock();
+		try {
+			if (this.loader != null) {
+				this.loader.dispose();
+			}
+			this.loader = Mono.defer(this::attempt) //
+					.retryWhen(Retry.backoff(Long.MAX_VALUE, this.retryBackoff) //
+							.maxBackoff(this.retryBackoff.multipliedBy(60)) //
+							.doBeforeRetry(signal -> log.warn("Unable to load {} ({}); retrying", this.description,
+									signal.failure().getMessage()))) //
+					.subscribe(count -> log.info("Loaded {} items into {}", count, this.description));
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Empty the copy and load it again.
+	 */
+	void reload() {
+		this.lock.writeLock().lock();
+		try {
+			this.loaded = false;
+			clear();
+			changed();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		load();
+	}
+
+	@Override
+	public void onAfterSave(AfterSaveEvent<Item> event) {
+		if (this.enabled) {
+			saved(event.getSource());
+		}
+	}
+
+	@Override
+	public void onAfterDelete(AfterDeleteEvent<Item> event) {
+		if (!this.enabled) {
+			return;
+		}
+		String id = deletedId(event);
+		if (id == null) {
+			reload();
+		} else {
+			deleted(id);
+		}
+	}
+
+	@Override
+	public void onApplicationEvent(MongoMappingEvent<?> event) {
+		if (this.enabled && deletesEveryItem(event)) {
+			reload();
+			return;
+		}
+		super.onApplicationEvent(event);
+	}
+
+	/**
+	 * Apply a save of {@code item}, however it was learned of.
+	 */
+	void saved(Item item) {
+		this.lock.writeLock().lock();
+		try {
+			if (this.loading) {
+				this.changedWhileLoading.add(item.getId());
+			}
+			put(item);
+			changed();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Apply a delete of the item with {@code id}, however it was learned of.
+	 */
+	void deleted(String id) {
+		this.lock.writeLock().lock();
+		try {
+			if (this.loading) {
+				this.changedWhileLoading.add(id);
+			}
+			remove(id);
+			changed();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * The items to load, with at least the fields {@link #put} needs.
+	 */
+	protected abstract Flux<Item> read();
+
+	/**
+	 * Add {@code item}, replacing whatever is held for its id.
+	 */
+	protected abstract void put(Item item);
+
+	protected abstract void remove(String id);
+
+	protected abstract void clear();
+
+	/**
+	 * Called after every change to the copy, loads included. Nothing by default.
+	 */
+	protected void changed() {
+	}
+
+	/**
+	 * The id of the one item an after-delete event names, or {@code null} if it was a delete by any other query,
+	 * which doesn't say which items went.
+	 */
+	static String deletedId(AfterDeleteEvent<Item> event) {
+		Object id = event.getSource().get("_id");
+		return id == null || id instanceof Document ? null : id.toString();
+	}
+
+	/**
+	 * Whether {@code event} is what deleting from the item collection by its name alone, as {@code deleteAll()}
+	 * does, publishes: an after-delete with no domain type, which the typed hooks never see.
+	 */
+	static boolean deletesEveryItem(MongoMappingEvent<?> event) {
+		return event instanceof AfterDeleteEvent && ((AfterDeleteEvent<?>) event).getType() == null
+				&& COLLECTION.equals(event.getCollectionName());
+	}
+
+	private Mono<Integer> attempt() {
+		long load;
+		this.lock.writeLock().lock();
+		try {
+			load = ++this.loads;
+			this.loading = true;
+			// Writes made before this read starts are in what it reads.
+			this.changedWhileLoading.clear();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		return read().collectList() //
+				.flatMap(items -> commit(load, items) ? Mono.just(items.size()) : Mono.empty());
+	}
+
+	private boolean commit(long load, List<Item> items) {
+		this.lock.writeLock().lock();
+		try {
+			if (load != this.loads) {
+				return false; // overtaken by a later load
+			}
+			for (Item item : items) {
+				if (!this.changedWhileLoading.contains(item.getId())) {
+					put(item);
+				}
+			}
+			this.changedWhileLoading.clear();
+			this.loading = false;
+			this.loaded = true;
+			changed();
+			return true;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.mongodb.client.model.changestream.OperationType;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+
+/**
+ * Exercises {@link InventorySnapshot} against mocked MongoDB operations.
+ */
+class InventorySnapshotTest {
+
+	Item clock = new Item("clock", "Alf alarm clock", "kids clock", 19.99);
+	Item tray = new Item("tray", "Smurf TV tray", "kids TV tray", 24.99);
+
+	ReactiveMongoOperations operations = mock(ReactiveMongoOperations.class);
+	ItemRepository repository = mock(ItemRepository.class);
+
+	InventorySnapshot snapshot = new InventorySnapshot(this.operations, this.repository, Duration.ofMillis(10));
+
+	@BeforeEach
+	void setUp() {
+		when(this.operations.getCollectionName(Item.class)).thenReturn("item");
+		when(this.operations.changeStream(anyString(), any(ChangeStreamOptions.class), eq(Item.class)))
+				.thenReturn(Flux.never());
+	}
+
+	@Test
+	void itemsDeletedDuringTheLoadStayDeleted() {
+		Sinks.Many<Item> findAll = Sinks.many().unicast().onBackpressureBuffer();
+		when(this.repository.findAll()).thenReturn(findAll.asFlux());
+
+		this.snapshot.load();
+		this.snapshot.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "clock"), Item.class, "item"));
+
+		// The read had already passed the clock before it was deleted.
+		findAll.tryEmitNext(this.clock);
+		findAll.tryEmitNext(this.tray);
+		findAll.tryEmitComplete();
+
+		assertThat(this.snapshot.getItems().collectList().block()).containsExactly(this.tray);
+	}
+
+	@Test
+	void aFailedLoadIsRetried() {
+		AtomicInteger reads = new AtomicInteger();
+		when(this.repository.findAll()).thenReturn(Flux.defer(() -> reads.incrementAndGet() == 1 //
+				? Flux.error(new DataAccessResourceFailureException("gone")) //
+				: Flux.just(this.clock, this.tray)));
+
+		this.snapshot.load();
+
+		verify(this.repository, timeout(5000).times(2)).findAll();
+		await(() -> assertThat(this.snapshot.isLoaded()).isTrue());
+		assertThat(this.snapshot.getItems().collectList().block()).containsExactly(this.clock, this.tray);
+	}
+
+	@Test
+	void deletesOnlyHoldBackTheLoadAttemptTheyHappenedDuring() {
+		Sinks.Many<Item> firstRead = Sinks.many().unicast().onBackpressureBuffer();
+		AtomicInteger reads = new AtomicInteger();
+		when(this.repository.findAll()).thenReturn(Flux.defer(() -> reads.incrementAndGet() == 1 //
+				? firstRead.asFlux() //
+				: Flux.just(this.clock, this.tray)));
+
+		this.snapshot.load();
+		this.snapshot.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "clock"), Item.class, "item"));
+		firstRead.tryEmitError(new DataAccessResourceFailureException("gone"));
+
+		// The retry reads after the delete, so a clock it finds was added again since.
+		await(() -> assertThat(this.snapshot.isLoaded()).isTrue());
+		assertThat(this.snapshot.getItems().collectList().block()).containsExactly(this.clock, this.tray);
+	}
+
+	@Test
+	void aLoadOvertakenByAReloadIsDropped() {
+		Sinks.Many<Item> firstRead = Sinks.many().unicast().onBackpressureBuffer();
+		when(this.repository.findAll()).thenReturn(firstRead.asFlux());
+		this.snapshot.load();
+
+		when(this.repository.findAll()).thenReturn(Flux.just(this.tray));
+		this.snapshot.onApplicationEvent(new AfterDeleteEvent<>(new Document(), null, "item"));
+
+		firstRead.tryEmitNext(this.clock);
+		firstRead.tryEmitComplete();
+
+		assertThat(this.snapshot.getItems().collectList().block()).containsExactly(this.tray);
+	}
+
+	@Test
+	void deleteAllReloads() {
+		when(this.repository.findAll()).thenReturn(Flux.just(this.clock, this.tray));
+		this.snapshot.load();
+		assertThat(this.snapshot.getItems().collectList().block()).containsExactly(this.clock, this.tray);
+
+		// What deleteAll() publishes: no domain type, no id.
+		when(this.repository.findAll()).thenReturn(Flux.empty());
+		this.snapshot.onApplicationEvent(new AfterDeleteEvent<>(new Document(), null, "item"));
+
+		assertThat(this.snapshot.getItems().collectList().block()).isEmpty();
+	}
+
+	@Test
+	void deletesByCriteriaReload() {
+		when(this.repository.findAll()).thenReturn(Flux.just(this.clock, this.tray));
+		this.snapshot.load();
+
+		when(this.repository.findAll()).thenReturn(Flux.just(this.tray));
+		this.snapshot.onApplicationEvent(new AfterDeleteEvent<>(
+				new Document("_id", new Document("$in", Arrays.asList("clock"))), Item.class, "item"));
+
+		assertThat(this.snapshot.getItems().collectList().block()).containsExactly(this.tray);
+	}
+
+	@Test
+	void failedChangeStreamReconnectsAfterTheLastChange() {
+		when(this.repository.findAll()).thenReturn(Flux.just(this.clock));
+
+		AtomicInteger subscriptions = new AtomicInteger();
+		ChangeStreamEvent<Item> trayAdded = change(OperationType.INSERT, this.tray, "token-1");
+		when(this.operations.changeStream(anyString(), any(ChangeStreamOptions.class), eq(Item.class)))
+				.thenReturn(Flux.defer(() -> subscriptions.incrementAndGet() == 1 //
+						? Flux.just(trayAdded).concatWith(Flux.error(new DataAccessResourceFailureException("gone"))) //
+						: Flux.never()));
+
+		this.snapshot.load();
+
+		ArgumentCaptor<ChangeStreamOptions> options = ArgumentCaptor.forClass(ChangeStreamOptions.class);
+		verify(this.operations, timeout(5000).times(2)).changeStream(anyString(), options.capture(), eq(Item.class));
+		assertThat(options.getAllValues().get(0).getResumeToken()).isEmpty();
+		assertThat(options.getAllValues().get(1).getResumeToken()).contains(new BsonString("token-1"));
+
+		assertThat(this.snapshot.getItems().collectList().block()).containsExactlyInAnyOrder(this.clock, this.tray);
+		verify(this.repository, times(1)).findAll();
+	}
+
+	@Test
+	void changeStreamThatNeverDeliveredReloadsOnReconnect() {
+		when(this.repository.findAll()).thenReturn(Flux.just(this.clock));
+
+		AtomicInteger subscriptions = new AtomicInteger();
+		when(this.operations.changeStream(anyString(), any(ChangeStreamOptions.class), eq(Item.class)))
+				.thenReturn(Flux.defer(() -> subscriptions.incrementAndGet() == 1 //
+						? Flux.error(new DataAccessResourceFailureException("gone")) //
+						: Flux.never()));
+
+		this.snapshot.load();
+
+		verify(this.operations, timeout(5000).times(2)).changeStream(anyString(), any(ChangeStreamOptions.class),
+				eq(Item.class));
+		verify(this.repository, times(2)).findAll();
+		assertThat(this.snapshot.getItems().collectList().block()).containsExactly(this.clock);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ChangeStreamEvent<Item> change(OperationType type, Item item, String token) {
+		ChangeStreamEvent<Item> event = mock(ChangeStreamEvent.class);
+		when(event.getOperationType()).thenReturn(type);
+		when(event.getBody()).thenReturn(item);
+		when(event.getResumeToken()).thenReturn(new BsonString(token));
+		return event;
+	}
+
+	private static void await(Runnable assertion) {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (true) {
+			try {
+				assertion.run();
+				return;
+			} catch (AssertionError e) {
+				if (System.nanoTime() > deadline) {
+					throw e;
+				}
+				LockSupport.parkNanos(Duration.ofMillis(10).toNanos());
+			}
+		}
+	}
+}
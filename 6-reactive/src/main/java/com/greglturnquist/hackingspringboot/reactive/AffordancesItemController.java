@@ -55,6 +55,13 @@ public class AffordancesItemController {
 	}
 	// end::intro[]
 
+	private final LinkTemplate itemLink = LinkTemplate.of( //
+			linkTo(methodOn(AffordancesItemController.class).findOne(LinkTemplate.ID)).withSelfRel() //
+					.andAffordance(methodOn(AffordancesItemController.class).updateItem(null, LinkTemplate.ID)));
+	private final LinkTemplate aggregateLink = LinkTemplate.of( //
+			linkTo(methodOn(AffordancesItemController.class).findAll()).withSelfRel() //
+					.andAffordance(methodOn(AffordancesItemController.class).addNewItem(null)));
+
 	// tag::root[]
 	@GetMapping("/affordances")
 	Mono<RepresentationModel<?>> root() {
@@ -77,19 +84,16 @@ public class AffordancesItemController {
 	// tag::find-all[]
 	@GetMapping("/affordances/items")
 	Mono<CollectionModel<EntityModel<Item>>> findAll() {
-		AffordancesItemController controller = methodOn(AffordancesItemController.class);
-
-		Mono<Link> aggregateRoot = linkTo(controller.findAll()) //
-				.withSelfRel() //
-				.andAffordance(controller.addNewItem(null)) // <1>
-				.toMono();
-
-		return this.repository.findAll() // <2>
-				.flatMap(item -> findOne(item.getId())) // <3>
-				.collectList() // <4>
-				.flatMap(models -> aggregateRoot //
-						.map(selfLink -> CollectionModel.of( //
-								models, selfLink))); // <5>
+		return LinkTemplate.baseUri(this.itemLink, this.aggregateLink).flatMap(baseUri -> {
+			Link selfLink = this.aggregateLink.expand(baseUri, IanaLinkRelations.SELF); // <1>
+			Link itemsLink = Link.of(selfLink.getHref(), IanaLinkRelations.ITEM);
+
+			return this.repository.findAll() // <2>
+					.map(item -> EntityModel.of(item, Links.of( //
+							this.itemLink.expand(baseUri, item.getId(), IanaLinkRelations.SELF), itemsLink))) // <3>
+					.collectList() // <4>
+					.map(models -> CollectionModel.of(models, selfLink)); // <5>
+		});
 	}
 	// end::find-all[]
 
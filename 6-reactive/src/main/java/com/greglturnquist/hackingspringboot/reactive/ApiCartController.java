@@ -38,22 +38,22 @@ public class ApiCartController {
 
     @GetMapping("/api/carts")
     Flux<Cart> findAll() {
-        return this.service.getAllCarts()
+        return this.service.getAllCartsWithItems()
             .switchIfEmpty(this.service.newCart());
     }
 
     @GetMapping("/api/carts/{id}")
     Mono<Cart> findOne(@PathVariable String id) {
-        return this.service.getCart(id);
+        return this.service.getCartWithItems(id);
     }
 
     @PostMapping("/api/carts/{cartId}/add/{itemId}")
     Mono<Cart> addToCart(@PathVariable String cartId, @PathVariable String itemId) {
-        return this.service.addItemToCart(cartId, itemId);
+        return this.service.addItemToCartSafely(cartId, itemId);
     }
 
     @DeleteMapping("/api/carts/{cartId}/remove/{itemId}")
     Mono<Cart> removeFromCart(@PathVariable String cartId, @PathVariable String itemId) {
-        return this.service.removeOneFromCart(cartId, itemId);
+        return this.service.removeOneFromCartSafely(cartId, itemId);
     }
 }
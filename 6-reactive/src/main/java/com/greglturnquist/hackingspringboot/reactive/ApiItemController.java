@@ -17,15 +17,21 @@
 package com.greglturnquist.hackingspringboot.reactive;
 
 import java.net.URI;
+import java.util.List;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
@@ -36,9 +42,11 @@ import org.springframework.web.bind.annotation.RestController;
 public class ApiItemController {
 
 	private final ItemRepository repository; // <2>
+	private final ItemSuggestions suggestions;
 
-	public ApiItemController(ItemRepository repository) {
+	public ApiItemController(ItemRepository repository, ItemSuggestions suggestions) {
 		this.repository = repository; // <3>
+		this.suggestions = suggestions;
 	}
 	// end::intro[]
 
@@ -49,6 +57,37 @@ public class ApiItemController {
 	}
 	// end::all-items[]
 
+	/**
+	 * Keyset-paginated variant of {@link #findAll()}. When more items may follow, the response carries a
+	 * {@code Link} header with a {@code next} relation pointing at the following page.
+	 */
+	@GetMapping(value = "/api/items", params = "limit")
+	Mono<ResponseEntity<List<Item>>> findPage(@RequestParam int limit, //
+			@RequestParam(required = false) String after, ServerHttpRequest request) {
+		int pageSize = ItemRepository.pageSize(limit);
+
+		return this.repository.findPage(pageSize, after) //
+				.collectList() //
+				.map(items -> {
+					ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+					if (items.size() == pageSize) {
+						Link next = LinkTemplate.page(request, pageSize, items.get(items.size() - 1).getId(), //
+								IanaLinkRelations.NEXT);
+						response.header(HttpHeaders.LINK, next.toString());
+					}
+					return response.body(items);
+				});
+	}
+
+	/**
+	 * Item names starting with {@code q}, ignoring case, for search-as-you-type. Served from memory by
+	 * {@link ItemSuggestions}; a keystroke never reaches MongoDB.
+	 */
+	@GetMapping("/api/items/suggest")
+	Mono<List<String>> suggest(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) {
+		return Mono.fromSupplier(() -> this.suggestions.suggest(q, limit));
+	}
+
 	// tag::one-item[]
 	@GetMapping("/api/items/{id}") // <1>
 	Mono<Item> findOne(@PathVariable String id) { // <2>
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Single round-trip cart mutations, applied server-side by MongoDB so that concurrent
+ * requests against the same {@link Cart} never overwrite each other.
+ */
+interface AtomicCartOperations {
+
+	/**
+	 * {@code $inc} the quantity of an existing line. Empty if the cart has no such line.
+	 */
+	Mono<Cart> incrementCartItem(String cartId, String itemId);
+
+	/**
+	 * {@code $inc} the quantity of an existing line by {@code quantity}. Empty if the cart
+	 * has no such line.
+	 */
+	Mono<Cart> incrementCartItem(String cartId, String itemId, int quantity);
+
+	/**
+	 * {@code $push} a new line, creating the cart on first use. Empty if another request
+	 * added the same line first.
+	 */
+	Mono<Cart> pushCartItem(String cartId, CartItem cartItem);
+
+	/**
+	 * {@code $inc} the quantity of a line by -1 as long as more than one remains. Empty
+	 * otherwise.
+	 */
+	Mono<Cart> decrementCartItem(String cartId, String itemId);
+
+	/**
+	 * {@code $pull} a line holding its last unit. Empty otherwise.
+	 */
+	Mono<Cart> pullCartItem(String cartId, String itemId);
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.*;
+import static org.springframework.data.mongodb.core.query.Criteria.*;
+import static org.springframework.data.mongodb.core.query.Query.*;
+
+import reactor.core.publisher.Mono;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+
+/**
+ * {@link AtomicCartOperations} backed by {@code findAndModify}. Each call matches the line
+ * through the positional {@code $} operator and ships only the changed fields.
+ */
+class AtomicCartOperationsImpl implements AtomicCartOperations {
+
+	private final ReactiveMongoOperations operations;
+
+	AtomicCartOperationsImpl(ReactiveMongoOperations operations) {
+		this.operations = operations;
+	}
+
+	@Override
+	public Mono<Cart> incrementCartItem(String cartId, String itemId) {
+		return incrementCartItem(cartId, itemId, 1);
+	}
+
+	@Override
+	public Mono<Cart> incrementCartItem(String cartId, String itemId, int quantity) {
+		return this.operations.findAndModify( //
+				query(where("id").is(cartId).and("cartItems.itemId").is(itemId)), //
+				new Update().inc("cartItems.$.quantity", quantity), //
+				options().returnNew(true), //
+				Cart.class);
+	}
+
+	@Override
+	public Mono<Cart> pushCartItem(String cartId, CartItem cartItem) {
+		return this.operations.findAndModify( //
+				query(where("id").is(cartId) //
+						.and("cartItems.itemId").ne(cartItem.getItemId())), //
+				new Update().push("cartItems", cartItem), //
+				options().upsert(true).returnNew(true), //
+				Cart.class) //
+				// The cart exists and already holds the line, so the upsert collided on _id.
+				.onErrorResume(DuplicateKeyException.class, e -> Mono.empty());
+	}
+
+	@Override
+	public Mono<Cart> decrementCartItem(String cartId, String itemId) {
+		return this.operations.findAndModify( //
+				query(where("id").is(cartId) //
+						.and("cartItems").elemMatch(where("itemId").is(itemId).and("quantity").gt(1))), //
+				new Update().inc("cartItems.$.quantity", -1), //
+				options().returnNew(true), //
+				Cart.class);
+	}
+
+	@Override
+	public Mono<Cart> pullCartItem(String cartId, String itemId) {
+		return this.operations.findAndModify( //
+				query(where("id").is(cartId) //
+						.and("cartItems").elemMatch(where("itemId").is(itemId).and("quantity").lte(1))), //
+				new Update().pull("cartItems", query(where("itemId").is(itemId))), //
+				options().returnNew(true), //
+				Cart.class);
+	}
+}
@@ -16,9 +16,12 @@
 package com.greglturnquist.hackingspringboot.reactive;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -42,6 +45,81 @@ class Cart {
 	}
 	// end::code[]
 
+	/**
+	 * Position of each line in {@link #cartItems}, keyed by item id. Not persisted; rebuilt on first
+	 * use after the cart is read from MongoDB (which writes the field directly) or replaced.
+	 */
+	private @Transient Map<String, Integer> positions;
+
+	/**
+	 * The line holding {@code itemId}, or {@literal null}.
+	 */
+	CartItem getCartItem(String itemId) {
+		Integer position = positions().get(itemId);
+		return position == null ? null : this.cartItems.get(position);
+	}
+
+	void addCartItem(CartItem cartItem) {
+		positions().put(cartItem.getItemId(), this.cartItems.size());
+		this.cartItems.add(cartItem);
+	}
+
+	/**
+	 * Drop the line holding {@code itemId} in constant time by moving the last line into its slot.
+	 * Line order is therefore not preserved.
+	 */
+	boolean removeCartItem(String itemId) {
+		Integer position = positions().remove(itemId);
+		if (position == null) {
+			return false;
+		}
+		CartItem last = this.cartItems.remove(this.cartItems.size() - 1);
+		if (position < this.cartItems.size()) {
+			this.cartItems.set(position, last);
+			this.positions.put(last.getItemId(), position);
+		}
+		return true;
+	}
+
+	/**
+	 * Ids of the items on this cart's lines.
+	 */
+	List<String> itemIds() {
+		List<String> itemIds = new ArrayList<>(this.cartItems.size());
+		for (CartItem cartItem : this.cartItems) {
+			itemIds.add(cartItem.getItemId());
+		}
+		return itemIds;
+	}
+
+	/**
+	 * Attach each line's {@link Item} from {@code items}, keyed by id. Lines whose item has since
+	 * been deleted are dropped from this copy of the cart, so callers never see a line without an
+	 * item; the stored cart is left alone.
+	 */
+	Cart withItems(Map<String, Item> items) {
+		List<CartItem> lines = new ArrayList<>(this.cartItems.size());
+		for (CartItem cartItem : this.cartItems) {
+			Item item = items.get(cartItem.getItemId());
+			if (item != null) {
+				cartItem.setItem(item);
+				lines.add(cartItem);
+			}
+		}
+		setCartItems(lines);
+		return this;
+	}
+
+	private Map<String, Integer> positions() {
+		if (this.positions == null || this.positions.size() != this.cartItems.size()) {
+			this.positions = new HashMap<>(this.cartItems.size() * 2);
+			for (int i = 0; i < this.cartItems.size(); i++) {
+				this.positions.put(this.cartItems.get(i).getItemId(), i);
+			}
+		}
+		return this.positions;
+	}
+
 	public String getId() {
 		return id;
 	}
@@ -56,6 +134,7 @@ class Cart {
 
 	public void setCartItems(List<CartItem> cartItems) {
 		this.cartItems = cartItems;
+		this.positions = null;
 	}
 
 	@Override
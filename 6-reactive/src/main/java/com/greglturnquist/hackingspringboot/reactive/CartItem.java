@@ -17,24 +17,39 @@ package com.greglturnquist.hackingspringboot.reactive;
 
 import java.util.Objects;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.annotation.Transient;
+
 /**
+ * A cart line. Only the item's id, a snapshot of its price and the quantity are stored; the
+ * full {@link Item} is looked up when the cart is read (see {@link InventoryService}) and
+ * rendered in its place.
+ *
  * @author Greg Turnquist
  */
 // tag::code[]
 class CartItem {
 
-	private Item item;
+	private String itemId;
+	private double price;
 	private int quantity;
+	private @Transient Item item;
 
 	private CartItem() {}
 
 	CartItem(Item item) {
-		this.item = item;
-		this.quantity = 1;
+		this(item, 1);
 	}
 
 	// end::code[]
 
+	CartItem(Item item, int quantity) {
+		this.itemId = item.getId();
+		this.price = item.getPrice();
+		this.item = item;
+		this.quantity = quantity;
+	}
+
 	public void increment() {
 		this.quantity++;
 	}
@@ -43,6 +58,31 @@ class CartItem {
 		this.quantity--;
 	}
 
+	@JsonIgnore
+	public String getItemId() {
+		return itemId;
+	}
+
+	public void setItemId(String itemId) {
+		this.itemId = itemId;
+	}
+
+	/**
+	 * Price of the item when it was first put in the cart.
+	 */
+	@JsonIgnore
+	public double getPrice() {
+		return price;
+	}
+
+	public void setPrice(double price) {
+		this.price = price;
+	}
+
+	/**
+	 * The full item, or {@literal null} until the cart has been hydrated. Hydration drops lines
+	 * whose item has since been deleted, so a hydrated line always has one.
+	 */
 	public Item getItem() {
 		return item;
 	}
@@ -66,16 +106,17 @@ class CartItem {
 		if (o == null || getClass() != o.getClass())
 			return false;
 		CartItem cartItem = (CartItem) o;
-		return quantity == cartItem.quantity && Objects.equals(item, cartItem.item);
+		return quantity == cartItem.quantity && Double.compare(price, cartItem.price) == 0
+				&& Objects.equals(itemId, cartItem.itemId);
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(item, quantity);
+		return Objects.hash(itemId, price, quantity);
 	}
 
 	@Override
 	public String toString() {
-		return "CartItem{" + "item=" + item + ", quantity=" + quantity + '}';
+		return "CartItem{" + "itemId='" + itemId + '\'' + ", price=" + price + ", quantity=" + quantity + '}';
 	}
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serializes read-modify-write cart mutations per cart without touching the database's locks.
+ * <p>
+ * Carts are hashed onto a fixed number of stripes. Each stripe is a lane: a {@link Sinks.Many}
+ * whose tasks are applied one at a time, so two mutations of the same cart can never interleave,
+ * while carts on different lanes proceed in parallel. Lanes are created on first use, hold at most
+ * {@code capacity} pending tasks, and are torn down once idle, so memory depends on the number of
+ * stripes rather than the number of carts.
+ */
+@Component
+class CartLanes implements DisposableBean {
+
+	private final int capacity;
+	private final Duration idleTimeout;
+	private final AtomicReferenceArray<Lane> lanes;
+	private final Disposable evictor;
+
+	CartLanes(@Value("${inventory.cart.lanes.stripes:0}") int stripes, //
+			@Value("${inventory.cart.lanes.capacity:1024}") int capacity, //
+			@Value("${inventory.cart.lanes.idle-timeout:60s}") Duration idleTimeout) {
+		this.capacity = capacity;
+		this.idleTimeout = idleTimeout;
+		this.lanes = new AtomicReferenceArray<>(stripes > 0 ? stripes //
+				: 4 * Runtime.getRuntime().availableProcessors());
+		this.evictor = Flux.interval(idleTimeout) //
+				.subscribe(tick -> evictIdleLanes());
+	}
+
+	/**
+	 * Queue {@code mutation} behind every mutation already submitted for {@code cartId}.
+	 */
+	<T> Mono<T> submit(String cartId, Supplier<Mono<T>> mutation) {
+		return Mono.defer(() -> {
+			Sinks.One<T> result = Sinks.one();
+
+			Mono<Void> task = Mono.defer(mutation) //
+					.doOnNext(result::tryEmitValue) //
+					.doOnError(result::tryEmitError) //
+					.doOnSuccess(value -> {
+						if (value == null) {
+							result.tryEmitEmpty();
+						}
+					}) //
+					.then() //
+					.onErrorResume(e -> Mono.empty());
+
+			int stripe = Math.floorMod(cartId.hashCode(), this.lanes.length());
+			Lane lane;
+
+			synchronized (this.lanes) {
+				lane = this.lanes.get(stripe);
+				if (lane == null) {
+					lane = new Lane(this.capacity);
+					this.lanes.set(stripe, lane);
+				}
+				lane.reserve(); // keeps the lane from being evicted until the task is queued
+			}
+
+			if (!lane.offer(task)) {
+				return Mono.error(new RejectedExecutionException( //
+						"Too many pending updates for cart " + cartId));
+			}
+
+			return result.asMono();
+		});
+	}
+
+	int activeLanes() {
+		int active = 0;
+		for (int i = 0; i < this.lanes.length(); i++) {
+			if (this.lanes.get(i) != null) {
+				active++;
+			}
+		}
+		return active;
+	}
+
+	void evictIdleLanes() {
+		long now = System.nanoTime();
+		synchronized (this.lanes) {
+			for (int i = 0; i < this.lanes.length(); i++) {
+				Lane lane = this.lanes.get(i);
+				if (lane != null && lane.isIdleSince(now - this.idleTimeout.toNanos())) {
+					lane.close();
+					this.lanes.set(i, null);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+		this.evictor.dispose();
+		synchronized (this.lanes) {
+			for (int i = 0; i < this.lanes.length(); i++) {
+				Lane lane = this.lanes.getAndSet(i, null);
+				if (lane != null) {
+					lane.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * One queue of tasks, drained strictly in order.
+	 */
+	private static class Lane {
+
+		private final Sinks.Many<Mono<Void>> tasks;
+		private final AtomicInteger pending = new AtomicInteger();
+		private volatile long lastUsed = System.nanoTime();
+
+		Lane(int capacity) {
+			this.tasks = Sinks.many().unicast().onBackpressureBuffer(Queues.<Mono<Void>> get(capacity).get());
+			this.tasks.asFlux() //
+					.concatMap(task -> task.doFinally(signal -> done()), 1) //
+					.subscribe();
+		}
+
+		void reserve() {
+			this.pending.incrementAndGet();
+			this.lastUsed = System.nanoTime();
+		}
+
+		synchronized boolean offer(Mono<Void> task) {
+			if (this.tasks.tryEmitNext(task).isFailure()) {
+				done();
+				return false;
+			}
+			return true;
+		}
+
+		private void done() {
+			this.lastUsed = System.nanoTime();
+			this.pending.decrementAndGet();
+		}
+
+		boolean isIdleSince(long threshold) {
+			return this.pending.get() == 0 && this.lastUsed - threshold < 0;
+		}
+
+		synchronized void close() {
+			this.tasks.tryEmitComplete();
+		}
+	}
+}
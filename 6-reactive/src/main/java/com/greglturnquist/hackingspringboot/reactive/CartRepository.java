@@ -21,7 +21,7 @@ import org.springframework.data.repository.reactive.ReactiveCrudRepository;
  * @author Greg Turnquist
  */
 // tag::code[]
-public interface CartRepository extends ReactiveCrudRepository<Cart, String> {
+public interface CartRepository extends ReactiveCrudRepository<Cart, String>, AtomicCartOperations {
 
 }
 // end::code[]
@@ -16,6 +16,8 @@
 
 package com.greglturnquist.hackingspringboot.reactive;
 
+import java.util.function.Function;
+
 import reactor.core.publisher.Mono;
 
 import org.springframework.stereotype.Service;
@@ -53,5 +55,26 @@ class CartService {
 						}))
 				.flatMap(this.cartRepository::save); // <5>
 	}
+	// end::code[]
+
+	private static final int MAX_CART_UPDATE_ATTEMPTS = 3;
+
+	/**
+	 * {@link #addToCart(String, String)} as one atomic update of the stored cart, so concurrent adds can't overwrite
+	 * each other. Cart lines only store their item's id, so the cart comes back with its items attached again.
+	 */
+	Mono<Cart> addToCartAtomically(String cartId, String id) {
+		return this.cartRepository.incrementCartItem(cartId, id) //
+				.switchIfEmpty(Mono.defer(() -> this.itemRepository.findById(id) //
+						.map(CartItem::new) //
+						.flatMap(cartItem -> this.cartRepository.pushCartItem(cartId, cartItem) //
+								// Lost the race to add the line? Then it exists now, so bump it instead.
+								.switchIfEmpty(Mono.defer(() -> this.cartRepository.incrementCartItem(cartId, id))) //
+								.repeatWhenEmpty(MAX_CART_UPDATE_ATTEMPTS, Function.identity())))) //
+				.flatMap(cart -> this.itemRepository.findAllById(cart.itemIds()) //
+						.collectMap(Item::getId) //
+						.map(cart::withItems));
+	}
+	// tag::code[]
 }
 // end::code[]
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Merges "add to cart" requests that hit the same cart within a short window into one write.
+ * <p>
+ * The first request for a cart opens a batch and schedules its flush {@code window} later. Requests
+ * arriving before then only bump the batch's per-item quantities. The flush hands the merged
+ * quantities to the writer once and replays its {@link Cart} (or error) to every caller in the
+ * batch. Requests arriving after the flush has started open a fresh batch.
+ * <p>
+ * Other updates to a cart (removes) do not go through a batch, so they first {@link #drain} it: a
+ * pending batch is flushed straight away and the update waits for its write, and for any earlier
+ * batch of the same cart still being written. That keeps an add
+ * followed by a remove in that order instead of letting the remove overtake the delayed add.
+ */
+class CartUpdateCoalescer {
+
+	private final Duration window;
+	private final BiFunction<String, Map<String, Integer>, Mono<Cart>> writer;
+	private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+	private final Map<String, Set<Batch>> unfinished = new ConcurrentHashMap<>();
+
+	CartUpdateCoalescer(Duration window, BiFunction<String, Map<String, Integer>, Mono<Cart>> writer) {
+		this.window = window;
+		this.writer = writer;
+	}
+
+	Mono<Cart> addItem(String cartId, String itemId) {
+		return Mono.defer(() -> {
+			Batch[] opened = new Batch[1];
+			Batch batch = this.batches.compute(cartId, (id, current) -> {
+				if (current == null) {
+					Batch added = current = opened[0] = new Batch();
+					this.unfinished.compute(id, (key, cartBatches) -> {
+						Set<Batch> pending = cartBatches == null ? ConcurrentHashMap.newKeySet() : cartBatches;
+						pending.add(added);
+						return pending;
+					});
+				}
+				current.quantities.merge(itemId, 1, Integer::sum);
+				return current;
+			});
+
+			if (opened[0] != null) {
+				Mono.delay(this.window) //
+						.subscribe(tick -> flush(cartId, batch));
+			}
+
+			return batch.result.asMono();
+		});
+	}
+
+	/**
+	 * Completes once every batch for {@code cartId} opened so far has been written, flushing the
+	 * one still waiting out its window now. Their outcomes are left to their own callers, so failed
+	 * writes complete this too.
+	 */
+	Mono<Void> drain(String cartId) {
+		return Mono.defer(() -> {
+			Set<Batch> pending = this.unfinished.get(cartId);
+			if (pending == null) {
+				return Mono.empty();
+			}
+			List<Mono<Cart>> written = new ArrayList<>();
+			for (Batch batch : pending) {
+				flush(cartId, batch);
+				written.add(batch.result.asMono().onErrorResume(error -> Mono.empty()));
+			}
+			return Mono.when(written);
+		});
+	}
+
+	int pendingCarts() {
+		return this.batches.size();
+	}
+
+	private void flush(String cartId, Batch batch) {
+		// Both the window and a drain may get here; only the first writes.
+		if (!batch.flushed.compareAndSet(false, true)) {
+			return;
+		}
+		// Once removed, no other request can reach this batch, so its quantities are frozen.
+		this.batches.remove(cartId, batch);
+
+		this.writer.apply(cartId, batch.quantities) //
+				.doFinally(signal -> this.unfinished.computeIfPresent(cartId, (id, pending) -> {
+					pending.remove(batch);
+					return pending.isEmpty() ? null : pending;
+				})) //
+				.subscribe( //
+						cart -> batch.result.tryEmitValue(cart), //
+						error -> batch.result.tryEmitError(error), //
+						() -> batch.result.tryEmitEmpty());
+	}
+
+	private static class Batch {
+
+		private final Map<String, Integer> quantities = new LinkedHashMap<>();
+		private final Sinks.One<Cart> result = Sinks.one();
+		private final AtomicBoolean flushed = new AtomicBoolean();
+	}
+}
@@ -34,11 +34,13 @@ import org.springframework.hateoas.RepresentationModel;
 import org.springframework.hateoas.mediatype.alps.Alps;
 import org.springframework.hateoas.mediatype.alps.Type;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
@@ -55,6 +57,11 @@ public class HypermediaItemController {
 	}
 	// end::intro[]
 
+	private final LinkTemplate itemLink = LinkTemplate.of( //
+			linkTo(methodOn(HypermediaItemController.class).findOne(LinkTemplate.ID)).withSelfRel());
+	private final LinkTemplate aggregateLink = LinkTemplate.of( //
+			linkTo(methodOn(HypermediaItemController.class).findAll()).withSelfRel());
+
 	// tag::root[]
 	@GetMapping("/hypermedia")
 	Mono<RepresentationModel<?>> root() {
@@ -77,16 +84,38 @@ public class HypermediaItemController {
 	// tag::find-all[]
 	@GetMapping("/hypermedia/items")
 	Mono<CollectionModel<EntityModel<Item>>> findAll() {
+		return LinkTemplate.baseUri(this.itemLink, this.aggregateLink).flatMap(baseUri -> {
+			Link aggregateLink = this.aggregateLink.expand(baseUri, IanaLinkRelations.ITEM);
+
+			return this.repository.findAll() //
+					.map(item -> EntityModel.of(item, Links.of( //
+							this.itemLink.expand(baseUri, item.getId(), IanaLinkRelations.SELF), aggregateLink))) //
+					.collectList() //
+					.map(entityModels -> CollectionModel.of(entityModels, aggregateLink.withSelfRel()));
+		});
+	}
+	// end::find-all[]
 
-		return this.repository.findAll() //
-				.flatMap(item -> findOne(item.getId())) //
+	/**
+	 * Keyset-paginated variant of {@link #findAll()}, with a {@code next} link while more items may follow.
+	 */
+	@GetMapping(value = "/hypermedia/items", params = "limit")
+	Mono<CollectionModel<EntityModel<Item>>> findPage(@RequestParam int limit, //
+			@RequestParam(required = false) String after, ServerHttpRequest request) {
+		int pageSize = ItemRepository.pageSize(limit);
+
+		return LinkTemplate.baseUri(this.itemLink).flatMapMany(baseUri -> this.repository.findPage(pageSize, after) //
+				.map(item -> EntityModel.of(item, this.itemLink.expand(baseUri, item.getId(), IanaLinkRelations.SELF)))) //
 				.collectList() //
-				.flatMap(entityModels -> linkTo(methodOn(HypermediaItemController.class) //
-						.findAll()).withSelfRel() //
-								.toMono() //
-								.map(selfLink -> CollectionModel.of(entityModels, selfLink)));
+				.map(entityModels -> {
+					Links links = Links.of(LinkTemplate.page(request, pageSize, after, IanaLinkRelations.SELF));
+					if (entityModels.size() == pageSize) {
+						links = links.and(LinkTemplate.page(request, pageSize, //
+								entityModels.get(entityModels.size() - 1).getContent().getId(), IanaLinkRelations.NEXT));
+					}
+					return CollectionModel.of(entityModels, links);
+				});
 	}
-	// end::find-all[]
 
 	// tag::find-one[]
 	@GetMapping("/hypermedia/items/{id}")
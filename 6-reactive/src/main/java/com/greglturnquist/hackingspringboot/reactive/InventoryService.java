@@ -16,10 +16,16 @@
 
 package com.greglturnquist.hackingspringboot.reactive;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
@@ -100,5 +106,166 @@ class InventoryService {
                 .collect(Collectors.toList())))
             .flatMap(cart -> this.cartRepository.save(cart));
     }
+    // end::code[]
+
+    private static final int MAX_CART_UPDATE_ATTEMPTS = 3;
+
+    private ItemCache itemCache;
+
+    private CartLanes cartLanes;
+
+    private boolean atomicCartUpdates;
+
+    private CartUpdateCoalescer cartUpdateCoalescer;
+
+    @Autowired
+    InventoryService(ItemRepository repository,
+                     CartRepository cartRepository,
+                     ItemCache itemCache,
+                     CartLanes cartLanes,
+                     @Value("${inventory.cart.atomic-updates:true}") boolean atomicCartUpdates,
+                     @Value("${inventory.cart.coalesce-window:0ms}") Duration coalesceWindow) {
+        this(repository, cartRepository);
+        this.itemCache = itemCache;
+        this.cartLanes = cartLanes;
+        this.atomicCartUpdates = atomicCartUpdates;
+        this.cartUpdateCoalescer = coalesceWindow.isZero() ? null
+            : new CartUpdateCoalescer(coalesceWindow, this::addItemsToCart);
+    }
+
+    /**
+     * Every cart, with its lines' items attached. Lines only store their item's id.
+     */
+    public Flux<Cart> getAllCartsWithItems() {
+        return this.cartRepository.findAll() //
+            .concatMap(this::withItemDetails);
+    }
+
+    public Mono<Cart> getCartWithItems(String cartId) {
+        return this.cartRepository.findById(cartId) //
+            .flatMap(this::withItemDetails);
+    }
+
+    /**
+     * The whole inventory, served from {@link ItemCache}.
+     */
+    public Flux<Item> getCachedInventory() {
+        return this.itemCache.findAll();
+    }
+
+    /**
+     * One page of the inventory. See {@link ItemRepository#findPage(int, String)}.
+     */
+    public Flux<Item> getInventory(int limit, String after) {
+        return this.itemRepository.findPage(limit, after);
+    }
+
+    /**
+     * {@link #addItemToCart(String, String)} without losing concurrent updates: coalesced with other adds to the
+     * same cart within {@code inventory.cart.coalesce-window}, then written atomically, or one at a time per cart
+     * when {@code inventory.cart.atomic-updates} is off.
+     */
+    Mono<Cart> addItemToCartSafely(String cartId, String itemId) {
+        if (this.cartUpdateCoalescer != null) {
+            return this.cartUpdateCoalescer.addItem(cartId, itemId);
+        }
+        return addItemsToCart(cartId, Collections.singletonMap(itemId, 1));
+    }
+
+    /**
+     * Add {@code quantities} (itemId to number of units) to the cart, writing each line once.
+     */
+    private Mono<Cart> addItemsToCart(String cartId, Map<String, Integer> quantities) {
+        if (!this.atomicCartUpdates) {
+            return this.cartLanes.submit(cartId, () -> loadAndAddItemsToCart(cartId, quantities) //
+                .flatMap(this::withItemDetails));
+        }
+        return Flux.fromIterable(quantities.entrySet()) //
+            .concatMap(entry -> addItemToCartAtomically(cartId, entry.getKey(), entry.getValue())) //
+            .reduce((previous, latest) -> latest) //
+            .flatMap(this::withItemDetails);
+    }
+
+    private Mono<Cart> addItemToCartAtomically(String cartId, String itemId, int quantity) {
+        return this.cartRepository.incrementCartItem(cartId, itemId, quantity) //
+            .switchIfEmpty(Mono.defer(() -> this.itemCache.findById(itemId) //
+                .flatMap(item -> this.cartRepository.pushCartItem(cartId, new CartItem(item, quantity)) //
+                    // Lost the race to add the line? Then it exists now, so bump it instead.
+                    .switchIfEmpty(Mono.defer(() -> this.cartRepository.incrementCartItem(cartId, itemId, quantity))) //
+                    .repeatWhenEmpty(MAX_CART_UPDATE_ATTEMPTS, Function.identity()))));
+    }
+
+    /**
+     * {@link #removeOneFromCart(String, String)} without losing concurrent updates, behind any adds to the same
+     * cart still waiting to be coalesced.
+     */
+    Mono<Cart> removeOneFromCartSafely(String cartId, String itemId) {
+        if (this.cartUpdateCoalescer != null) {
+            // Let adds still waiting in the coalescer land first.
+            return this.cartUpdateCoalescer.drain(cartId) //
+                .then(Mono.defer(() -> removeOneFromCartNow(cartId, itemId)));
+        }
+        return removeOneFromCartNow(cartId, itemId);
+    }
+
+    private Mono<Cart> removeOneFromCartNow(String cartId, String itemId) {
+        if (!this.atomicCartUpdates) {
+            return this.cartLanes.submit(cartId, () -> loadAndRemoveOneFromCart(cartId, itemId) //
+                .flatMap(this::withItemDetails));
+        }
+        return this.cartRepository.decrementCartItem(cartId, itemId) //
+            .switchIfEmpty(Mono.defer(() -> this.cartRepository.pullCartItem(cartId, itemId))) //
+            // A concurrent add may have moved the last unit past the pull condition.
+            .switchIfEmpty(Mono.defer(() -> this.cartRepository.decrementCartItem(cartId, itemId))) //
+            .flatMap(this::withItemDetails);
+    }
+
+    /**
+     * Carts only store item ids, so fetch every item of {@code cart} in one cached bulk lookup and
+     * attach them to their lines. Lines for items deleted since they were added are left out.
+     */
+    private Mono<Cart> withItemDetails(Cart cart) {
+        return this.itemCache.findAllById(cart.itemIds()) //
+            .map(cart::withItems);
+    }
+
+    /**
+     * Read-modify-write of the whole cart. Only safe while {@link CartLanes} serializes the calls per cart.
+     */
+    private Mono<Cart> loadAndAddItemsToCart(String cartId, Map<String, Integer> quantities) {
+        return this.cartRepository.findById(cartId)
+            .defaultIfEmpty(new Cart(cartId)) //
+            .flatMap(cart -> Flux.fromIterable(quantities.entrySet()) //
+                .concatMap(entry -> {
+                    CartItem cartItem = cart.getCartItem(entry.getKey());
+                    if (cartItem != null) {
+                        cartItem.setQuantity(cartItem.getQuantity() + entry.getValue());
+                        return Mono.just(cartItem);
+                    }
+                    return this.itemCache.findById(entry.getKey()) //
+                        .map(item -> new CartItem(item, entry.getValue())) //
+                        .doOnNext(cart::addCartItem);
+                }) //
+                .hasElements() //
+                .filter(changed -> changed) //
+                .map(changed -> cart))
+            .flatMap(cart -> this.cartRepository.save(cart));
+    }
+
+    private Mono<Cart> loadAndRemoveOneFromCart(String cartId, String itemId) {
+        return this.cartRepository.findById(cartId)
+            .flatMap(cart -> {
+                CartItem cartItem = cart.getCartItem(itemId);
+                if (cartItem == null) {
+                    return Mono.empty();
+                }
+                cartItem.decrement();
+                if (cartItem.getQuantity() <= 0) {
+                    cart.removeCartItem(itemId);
+                }
+                return this.cartRepository.save(cart);
+            });
+    }
+    // tag::code[]
 }
 // end::code[]
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.MongoMappingEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Read-through cache in front of {@link ItemRepository}.
+ * <p>
+ * Items are held for {@code inventory.item-cache.ttl}, up to {@code inventory.item-cache.maximum-size}
+ * of them. Concurrent misses for the same id share one query, and bulk lookups fetch all of their
+ * misses with a single {@code findAllById}. Any item saved or deleted through MongoDB in this
+ * application is evicted as soon as the write lands; writes made by other processes are picked up
+ * when the entry expires.
+ * <p>
+ * Hits, misses and evictions are published under the {@code cache} metrics with {@code cache=items}.
+ */
+@Component
+class ItemCache extends AbstractMongoEventListener<Item> implements MeterBinder {
+
+	private final ItemRepository repository;
+	private final AsyncCache<String, Item> items;
+	private final Duration ttl;
+	private final AtomicLong inventoryLoads = new AtomicLong();
+	private volatile Mono<List<Item>> inventory;
+
+	ItemCache(ItemRepository repository, //
+			@Value("${inventory.item-cache.maximum-size:10000}") long maximumSize, //
+			@Value("${inventory.item-cache.ttl:5m}") Duration ttl) {
+		this.repository = repository;
+		this.ttl = ttl;
+		this.items = Caffeine.newBuilder() //
+				.maximumSize(maximumSize) //
+				.expireAfterWrite(ttl) //
+				.recordStats() //
+				.buildAsync();
+		this.inventory = loadInventory();
+	}
+
+	Mono<Item> findById(String id) {
+		return Mono.fromFuture(() -> detached( //
+				this.items.get(id, (key, executor) -> this.repository.findById(key).toFuture())));
+	}
+
+	/**
+	 * The cached items among {@code ids}, keyed by id. Unknown ids are left out.
+	 */
+	Mono<Map<String, Item>> findAllById(Iterable<String> ids) {
+		return Mono.fromFuture(() -> detached( //
+				this.items.getAll(ids, (keys, executor) -> this.repository.findAllById(Flux.<String> fromIterable(keys)) //
+						.collectMap(Item::getId) //
+						.toFuture())));
+	}
+
+	Flux<Item> findAll() {
+		return this.inventory.flatMapIterable(Function.identity());
+	}
+
+	void evict(String id) {
+		this.items.synchronous().invalidate(id);
+		this.inventory = loadInventory();
+	}
+
+	@Override
+	public void onAfterSave(AfterSaveEvent<Item> event) {
+		evict(event.getSource().getId());
+	}
+
+	@Override
+	public void onAfterDelete(AfterDeleteEvent<Item> event) {
+		String id = ItemMirror.deletedId(event);
+		if (id == null) {
+			// Deleted by a criteria we cannot map back to ids.
+			evictAll();
+		} else {
+			evict(id);
+		}
+	}
+
+	@Override
+	public void onApplicationEvent(MongoMappingEvent<?> event) {
+		if (ItemMirror.deletesEveryItem(event)) {
+			evictAll();
+			return;
+		}
+		super.onApplicationEvent(event);
+	}
+
+	private void evictAll() {
+		this.items.synchronous().invalidateAll();
+		this.inventory = loadInventory();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		new CaffeineCacheMetrics(this.items.synchronous(), "items", Tags.empty()).bindTo(registry);
+		FunctionCounter.builder("cache.inventory.loads", this.inventoryLoads, AtomicLong::get) //
+				.description("Number of times the full inventory was read from MongoDB") //
+				.register(registry);
+	}
+
+	/**
+	 * The whole catalog, fetched on first use and shared by every subscriber until {@link #ttl}
+	 * passes. Failed loads are not cached.
+	 */
+	private Mono<List<Item>> loadInventory() {
+		return Mono.defer(() -> this.repository.findAll().collectList()) //
+				.doOnSubscribe(subscription -> this.inventoryLoads.incrementAndGet()) //
+				.cache(items -> this.ttl, error -> Duration.ZERO, () -> Duration.ZERO);
+	}
+
+	/**
+	 * A view of {@code future} that can be cancelled by one subscriber without cancelling the
+	 * load other subscribers are waiting on.
+	 */
+	private static <T> CompletableFuture<T> detached(CompletableFuture<T> future) {
+		return future.thenApply(Function.identity());
+	}
+}
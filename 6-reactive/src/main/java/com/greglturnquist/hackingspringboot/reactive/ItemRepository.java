@@ -16,6 +16,10 @@
 
 package com.greglturnquist.hackingspringboot.reactive;
 
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Flux;
@@ -47,4 +51,31 @@ public interface ItemRepository extends ReactiveCrudRepository<Item, String> {
     // search by name OR description
     Flux<Item> findByNameContainingOrDescriptionContainingAllIgnoreCase(String partialName, String partialDesc);
     // end::code-3[]
+
+    /**
+     * Largest page {@link #findPage(int, String)} hands out, whatever the caller asks for.
+     */
+    int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Up to {@code limit} items in {@code _id} order, starting right after the item {@code after} (or at
+     * the beginning when it is {@literal null}). Seeking by {@code _id} instead of skipping keeps every
+     * page an index range scan, no matter how deep into the catalog it is.
+     */
+    default Flux<Item> findPage(int limit, String after) {
+        Pageable page = PageRequest.of(0, pageSize(limit), Sort.by("id"));
+        if (after == null) {
+            return findAllBy(page);
+        }
+        // Range operators on _id are not converted from String the way equality is, so hand over the ObjectId.
+        return findByIdGreaterThan(ObjectId.isValid(after) ? new ObjectId(after) : after, page);
+    }
+
+    static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    Flux<Item> findAllBy(Pageable pageable);
+
+    Flux<Item> findByIdGreaterThan(Object after, Pageable pageable);
 }
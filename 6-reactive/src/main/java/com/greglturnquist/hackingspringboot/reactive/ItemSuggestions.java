@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import reactor.core.publisher.Flux;
+import org.springframework.stereotype.Component;
+
+/**
+ * Item names ordered by their lower-cased form, for search-as-you-type.
+ * <p>
+ * All names sharing a prefix sit next to each other, so the names starting with what has been typed so far are
+ * one {@code O(log n)} seek and a walk along the map away, without ever asking MongoDB. Names carried by more
+ * items rank first. The map is concurrent, so suggestions are served without locking while writes land.
+ * <p>
+ * Loaded and kept current as an {@link ItemMirror}. Until the first load completes there are no suggestions.
+ */
+@Component
+class ItemSuggestions extends ItemMirror {
+
+	static final int MAX_SUGGESTIONS = 50;
+
+	/**
+	 * Most items first, then alphabetically.
+	 */
+	private static final Comparator<Map.Entry<String, Name>> RANK = Comparator
+			.<Map.Entry<String, Name>> comparingInt(entry -> entry.getValue().items).reversed()
+			.thenComparing(Map.Entry::getKey);
+
+	private final ItemRepository repository;
+	private final ConcurrentNavigableMap<String, Name> names = new ConcurrentSkipListMap<>();
+	private final Map<String, String> namesById = new HashMap<>(); // guarded by lock
+
+	ItemSuggestions(ItemRepository repository) {
+		super("the item name suggestions", true, LOAD_RETRY_BACKOFF);
+		this.repository = repository;
+	}
+
+	/**
+	 * The {@code limit} (at most {@link #MAX_SUGGESTIONS}) distinct item names starting with {@code prefix},
+	 * ignoring case, carried by the most items, ties broken alphabetically.
+	 * <p>
+	 * Every match is looked at, but only the best {@code limit} are kept while doing so.
+	 */
+	List<String> suggest(String prefix, int limit) {
+		String key = prefix.toLowerCase(Locale.ROOT);
+		int max = Math.min(limit, MAX_SUGGESTIONS);
+
+		if (key.isEmpty() || max < 1) {
+			return Collections.emptyList();
+		}
+
+		// The worst of the best so far at the head, ready to be pushed out by a better match.
+		PriorityQueue<Map.Entry<String, Name>> best = new PriorityQueue<>(max + 1, RANK.reversed());
+		for (Map.Entry<String, Name> entry : this.names.tailMap(key).entrySet()) {
+			if (!entry.getKey().startsWith(key)) {
+				break;
+			}
+			best.add(entry);
+			if (best.size() > max) {
+				best.poll();
+			}
+		}
+
+		List<Map.Entry<String, Name>> ranked = new ArrayList<>(best);
+		ranked.sort(RANK);
+
+		List<String> suggestions = new ArrayList<>(ranked.size());
+		ranked.forEach(entry -> suggestions.add(entry.getValue().name));
+		return suggestions;
+	}
+
+	@Override
+	protected Flux<Item> read() {
+		return this.repository.findAll();
+	}
+
+	@Override
+	protected void put(Item item) {
+		remove(item.getId());
+		if (item.getName() == null) {
+			return;
+		}
+		this.namesById.put(item.getId(), item.getName());
+		this.names.compute(item.getName().toLowerCase(Locale.ROOT), //
+				(key, existing) -> existing == null ? new Name(item.getName(), 1)
+						: new Name(existing.name, existing.items + 1));
+	}
+
+	@Override
+	protected void remove(String id) {
+		String name = this.namesById.remove(id);
+		if (name == null) {
+			return;
+		}
+		this.names.computeIfPresent(name.toLowerCase(Locale.ROOT), //
+				(key, existing) -> existing.items == 1 ? null : new Name(existing.name, existing.items - 1));
+	}
+
+	@Override
+	protected void clear() {
+		this.namesById.clear();
+		this.names.clear();
+	}
+
+	/**
+	 * A name as first seen, and how many items currently carry it in any case.
+	 */
+	private static class Name {
+
+		private final String name;
+		private final int items;
+
+		Name(String name, int items) {
+			this.name = name;
+			this.items = items;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.springframework.data.mongodb.core.query.Criteria.*;
+import static org.springframework.data.mongodb.core.query.Query.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rewrites cart lines stored before {@link CartItem} kept only the item id when the application starts.
+ * <p>
+ * Those lines embed the whole item under {@code item} and have no {@code itemId}, so they would read back as lines
+ * for no item. Each one becomes {@code {itemId, price, quantity}}, taking the price from the embedded item. A cart is
+ * only rewritten if its lines are still the ones that were read, so a cart changed concurrently is left for the next
+ * start rather than overwritten.
+ */
+@Component
+class LegacyCartLines {
+
+	@Bean
+	CommandLineRunner migrateLegacyCartLines(MongoOperations mongo) {
+		return args -> migrate(mongo);
+	}
+
+	/**
+	 * @return how many carts were rewritten
+	 */
+	static long migrate(MongoOperations mongo) {
+		String collection = mongo.getCollectionName(Cart.class);
+		long migrated = 0;
+
+		for (Document cart : mongo.find(query(where("cartItems.item").exists(true)), Document.class, collection)) {
+			List<Document> lines = cart.getList("cartItems", Document.class);
+			List<Document> rewritten = new ArrayList<>(lines.size());
+			for (Document line : lines) {
+				rewritten.add(rewrite(line));
+			}
+
+			migrated += mongo.updateFirst( //
+					query(where("_id").is(cart.get("_id")).and("cartItems").is(lines)), //
+					Update.update("cartItems", rewritten), //
+					collection).getModifiedCount();
+		}
+		return migrated;
+	}
+
+	private static Document rewrite(Document line) {
+		Document item = line.get("item", Document.class);
+		if (item == null) {
+			return line;
+		}
+		Object id = item.get("_id");
+		return new Document("itemId", id instanceof ObjectId ? ((ObjectId) id).toHexString() : String.valueOf(id)) //
+				.append("price", item.get("price")) //
+				.append("quantity", line.get("quantity"));
+	}
+}
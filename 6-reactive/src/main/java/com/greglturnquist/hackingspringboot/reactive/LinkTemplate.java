@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.springframework.web.filter.reactive.ServerWebExchangeContextFilter.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import org.springframework.hateoas.AffordanceModel;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
+import org.springframework.hateoas.mediatype.Affordances;
+import org.springframework.hateoas.server.reactive.WebFluxLinkBuilder;
+import org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.WebFluxLink;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * A controller link resolved through {@link WebFluxLinkBuilder} once, the first time it is needed, and
+ * expanded per item with plain string concatenation.
+ * <p>
+ * {@code linkTo(methodOn(...))} proxies the controller, inspects the mapping and re-parses the URI on every
+ * call, which adds up when a collection links each of its items. Here that happens once, against
+ * {@link #ID} in place of the path variable, and a request only pays for looking up its base URI (see
+ * {@link #baseUri(LinkTemplate...)}) and splicing the encoded id in.
+ * <p>
+ * Affordances are captured along with the link. Each expansion points them at the expanded link's target,
+ * reusing their method, name and payload metadata.
+ */
+final class LinkTemplate {
+
+	/**
+	 * Stands in for the path variable while the template is resolved.
+	 */
+	static final String ID = "__ID__";
+
+	private final Mono<Resolved> resolution;
+	private volatile Resolved resolved;
+
+	private LinkTemplate(WebFluxLink link) {
+		// Resolved outside of any request, so its href is relative to the application root.
+		this.resolution = link.toMono() //
+				.contextWrite(context -> context.delete(EXCHANGE_CONTEXT_ATTRIBUTE)) //
+				.map(Resolved::new) //
+				.doOnNext(resolved -> this.resolved = resolved) //
+				.cache();
+	}
+
+	static LinkTemplate of(WebFluxLink link) {
+		return new LinkTemplate(link);
+	}
+
+	/**
+	 * The scheme, host and context path links of the current request are built on, the same way
+	 * {@link WebFluxLinkBuilder} derives them, or an empty string outside of a request, once {@code templates}
+	 * are resolved and ready to expand.
+	 */
+	static Mono<String> baseUri(LinkTemplate... templates) {
+		return Flux.fromArray(templates) //
+				.concatMap(template -> template.resolution) //
+				.then(Mono.deferContextual(context -> Mono.just(context //
+						.<ServerWebExchange> getOrEmpty(EXCHANGE_CONTEXT_ATTRIBUTE) //
+						.map(LinkTemplate::baseUri) //
+						.orElse(""))));
+	}
+
+	private static String baseUri(ServerWebExchange exchange) {
+		String baseUri = UriComponentsBuilder.fromHttpRequest(exchange.getRequest()) //
+				.replacePath(exchange.getRequest().getPath().contextPath().value()) //
+				.replaceQuery("") //
+				.build() //
+				.toUriString();
+
+		return baseUri.endsWith("/") ? baseUri.substring(0, baseUri.length() - 1) : baseUri;
+	}
+
+	/**
+	 * A link to the page of {@code limit} items following {@code after} in the collection {@code request} was
+	 * made against, absolute like every other link, with any other query parameters left out.
+	 */
+	static Link page(ServerHttpRequest request, int limit, String after, LinkRelation relation) {
+		String href = UriComponentsBuilder.fromHttpRequest(request) //
+				.replaceQuery(null) //
+				.queryParam("limit", limit) //
+				.queryParamIfPresent("after", Optional.ofNullable(after)) //
+				.encode() //
+				.build() //
+				.toUriString();
+
+		return Link.of(href, relation);
+	}
+
+	/**
+	 * Expand a template without a path variable.
+	 */
+	Link expand(String baseUri, LinkRelation relation) {
+		return resolved().expand(baseUri, "", relation);
+	}
+
+	/**
+	 * Expand a template with {@code id} as its path variable.
+	 */
+	Link expand(String baseUri, String id, LinkRelation relation) {
+		return resolved().expand(baseUri, UriUtils.encodePathSegment(id, StandardCharsets.UTF_8), relation);
+	}
+
+	private Resolved resolved() {
+		Resolved resolved = this.resolved;
+		if (resolved == null) {
+			throw new IllegalStateException("Link template not resolved yet; expand it inside baseUri(...)");
+		}
+		return resolved;
+	}
+
+	/**
+	 * An href split around {@link #ID}.
+	 */
+	private static class Href {
+
+		private final String prefix;
+		private final String suffix;
+
+		Href(String href) {
+			int index = href.indexOf(ID);
+
+			this.prefix = index < 0 ? href : href.substring(0, index);
+			this.suffix = index < 0 ? "" : href.substring(index + ID.length());
+		}
+
+		String expand(String baseUri, String encodedId) {
+			return baseUri + this.prefix + encodedId + this.suffix;
+		}
+	}
+
+	/**
+	 * A resolved link, its href and the target of each of its affordances.
+	 */
+	private static class Resolved {
+
+		private final Link link;
+		private final Href href;
+		private final List<AffordanceModel> affordances;
+		private final List<Href> targets;
+
+		Resolved(Link link) {
+			this.link = link.withAffordances(Collections.emptyList());
+			this.href = new Href(link.getHref());
+			// Every media type's model of an affordance describes the same method, target and payload.
+			this.affordances = link.getAffordances().stream() //
+					.map(affordance -> affordance.iterator().next()) //
+					.collect(Collectors.toList());
+			this.targets = this.affordances.stream() //
+					.map(model -> new Href(model.getURI())) //
+					.collect(Collectors.toList());
+		}
+
+		Link expand(String baseUri, String encodedId, LinkRelation relation) {
+			Link link = this.link.withHref(this.href.expand(baseUri, encodedId)).withRel(relation);
+			if (this.affordances.isEmpty()) {
+				return link;
+			}
+
+			Affordances affordances = Affordances.of(link);
+			for (int i = 0; i < this.affordances.size(); i++) {
+				AffordanceModel model = this.affordances.get(i);
+				affordances = affordances.afford(model.getHttpMethod()) //
+						.withInput(model.getInput()) //
+						.withOutput(model.getOutput()) //
+						.withParameters(model.getQueryMethodParameters()) //
+						.withName(model.getName()) //
+						.withTarget(Link.of(this.targets.get(i).expand(baseUri, encodedId))) //
+						.build();
+			}
+			return affordances.toLink();
+		}
+	}
+}
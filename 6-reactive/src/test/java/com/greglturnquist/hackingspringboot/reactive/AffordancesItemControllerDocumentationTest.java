@@ -15,6 +15,7 @@
  */
 package com.greglturnquist.hackingspringboot.reactive;
 
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.restdocs.operation.preprocess.Preprocessors.*;
 import static org.springframework.restdocs.webtestclient.WebTestClientRestDocumentation.*;
@@ -69,8 +70,6 @@ public class AffordancesItemControllerDocumentationTest {
 	@Test
 	void findAggregateRootItemAffordances() {
 		when(repository.findAll()).thenReturn(Flux.just( //
-				new Item("Alf alarm clock", "nothing I really need", 19.99)));
-		when(repository.findById((String) null)).thenReturn(Mono.just( //
 				new Item("item-1", "Alf alarm clock", "nothing I really need", 19.99)));
 
 		this.webTestClient.get().uri("/affordances/items") // <1>
@@ -79,6 +78,8 @@ public class AffordancesItemControllerDocumentationTest {
 				.expectStatus().isOk() //
 				.expectBody() //
 				.consumeWith(document("aggregate-root-affordances", preprocessResponse(prettyPrint()))); // <3>
+
+		verify(repository, never()).findById(anyString());
 	}
 	// end::affordances2[]
 
@@ -19,6 +19,8 @@ import static org.mockito.Mockito.*;
 import static org.springframework.restdocs.operation.preprocess.Preprocessors.*;
 import static org.springframework.restdocs.webtestclient.WebTestClientRestDocumentation.*;
 
+import java.util.Arrays;
+
 import org.junit.jupiter.api.Test;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -43,6 +45,8 @@ public class ApiItemControllerDocumentationTest {
 	@MockBean ItemRepository repository; // <5>
 	// end::intro[]
 
+	@MockBean ItemSuggestions suggestions;
+
 	// tag::test1[]
 	@Test
 	void findingAllItems() {
@@ -99,4 +103,32 @@ public class ApiItemControllerDocumentationTest {
 				.expectBody() //
 				.consumeWith(document("update-item", preprocessResponse(prettyPrint()))); // <4>
 	}
+
+	@Test
+	void findPageOfItems() {
+		when(repository.findPage(2, "item-1")).thenReturn( //
+				Flux.just(new Item("item-2", "Smurf TV tray", "kids TV tray", 24.99), //
+						new Item("item-3", "Lava lamp", "groovy", 9.99)));
+
+		this.webTestClient.get().uri("/api/items?limit=2&after=item-1") //
+				.exchange() //
+				.expectStatus().isOk() //
+				.expectHeader().valueEquals("Link", "<http://localhost:8080/api/items?limit=2&after=item-3>;rel=\"next\"") //
+				.expectBody() //
+				.consumeWith(document("findPage", preprocessResponse(prettyPrint())));
+	}
+
+	@Test
+	void suggestItemNames() {
+		when(suggestions.suggest("sm", 10)).thenReturn(Arrays.asList("Smurf lamp", "Smurf TV tray"));
+
+		this.webTestClient.get().uri("/api/items/suggest?q=sm") //
+				.exchange() //
+				.expectStatus().isOk() //
+				.expectBody() //
+				.json("[\"Smurf lamp\", \"Smurf TV tray\"]") //
+				.consumeWith(document("suggest", preprocessResponse(prettyPrint())));
+
+		verifyNoInteractions(repository);
+	}
 }
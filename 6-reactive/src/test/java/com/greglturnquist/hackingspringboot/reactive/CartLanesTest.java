@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Exercises {@link CartLanes} against an in-memory "cart" so no database is needed.
+ */
+class CartLanesTest {
+
+	CartLanes lanes = new CartLanes(8, 1024, Duration.ofHours(1));
+
+	@AfterEach
+	void tearDown() {
+		this.lanes.destroy();
+	}
+
+	@Test
+	void readModifyWriteOnOneCartLosesNoUpdates() {
+		AtomicInteger stored = new AtomicInteger();
+
+		Flux.range(0, 500) //
+				.flatMap(i -> this.lanes.submit("cart", () -> Mono.fromCallable(stored::get) // read
+						.delayElement(Duration.ofMillis(1)) // modify, slowly
+						.doOnNext(value -> stored.set(value + 1))), 500) // write
+				.then(Mono.fromCallable(stored::get)) //
+				.as(StepVerifier::create) //
+				.expectNext(500) //
+				.verifyComplete();
+	}
+
+	@Test
+	void differentCartsDoNotWaitForEachOther() {
+		Sinks.Empty<Void> blocker = Sinks.empty();
+		this.lanes.submit("first", blocker::asMono).subscribe();
+
+		this.lanes.submit("second", () -> Mono.just("done")) //
+				.as(StepVerifier::create) //
+				.expectNext("done") //
+				.verifyComplete();
+
+		blocker.tryEmitEmpty();
+	}
+
+	@Test
+	void errorsAndEmptyResultsReachOnlyTheirCaller() {
+		this.lanes.submit("cart", () -> Mono.error(new IllegalStateException("boom"))) //
+				.as(StepVerifier::create) //
+				.verifyErrorMessage("boom");
+
+		this.lanes.submit("cart", Mono::empty) //
+				.as(StepVerifier::create) //
+				.verifyComplete();
+
+		this.lanes.submit("cart", () -> Mono.just(42)) //
+				.as(StepVerifier::create) //
+				.expectNext(42) //
+				.verifyComplete();
+	}
+
+	@Test
+	void fullLaneRejectsNewWork() {
+		CartLanes smallLanes = new CartLanes(8, 16, Duration.ofHours(1));
+		Sinks.Empty<Void> blocker = Sinks.empty();
+		try {
+			Flux.range(0, 64) //
+					.flatMap(i -> smallLanes.submit("cart", blocker::asMono), 64) //
+					.as(StepVerifier::create) //
+					.expectError(RejectedExecutionException.class) //
+					.verify(Duration.ofSeconds(5));
+		} finally {
+			blocker.tryEmitEmpty();
+			smallLanes.destroy();
+		}
+	}
+
+	@Test
+	void idleLanesAreEvicted() {
+		CartLanes quickLanes = new CartLanes(8, 16, Duration.ofMillis(10));
+		try {
+			quickLanes.submit("cart", () -> Mono.just("done")).block();
+			assertThat(quickLanes.activeLanes()).isEqualTo(1);
+
+			Mono.delay(Duration.ofMillis(50)).block();
+			quickLanes.evictIdleLanes();
+			assertThat(quickLanes.activeLanes()).isZero();
+
+			quickLanes.submit("cart", () -> Mono.just("again")) //
+					.as(StepVerifier::create) //
+					.expectNext("again") //
+					.verifyComplete();
+		} finally {
+			quickLanes.destroy();
+		}
+	}
+}
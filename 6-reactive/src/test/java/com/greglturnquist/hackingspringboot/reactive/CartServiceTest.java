@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+
+import reactor.test.StepVerifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Checks that {@link CartService} updates carts atomically and hands them back with their items attached.
+ */
+@DataMongoTest
+@Import(CartService.class)
+class CartServiceTest {
+
+	@Autowired CartService cartService;
+
+	@Autowired ItemRepository itemRepository;
+
+	@Autowired CartRepository cartRepository;
+
+	Item item;
+
+	@BeforeEach
+	void setUp() {
+		this.item = this.cartRepository.deleteAll() //
+				.then(this.itemRepository.deleteAll()) //
+				.then(this.itemRepository.save(new Item("Alf alarm clock", "kids clock", 19.99))) //
+				.block();
+	}
+
+	@Test
+	void addingTwiceBumpsTheHydratedLine() {
+		this.cartService.addToCartAtomically("my-cart", this.item.getId()) //
+				.then(this.cartService.addToCartAtomically("my-cart", this.item.getId())) //
+				.as(StepVerifier::create) //
+				.expectNextMatches(cart -> {
+					assertThat(cart.getCartItems()).hasSize(1);
+					assertThat(cart.getCartItems().get(0).getItem()).isEqualTo(this.item);
+					assertThat(cart.getCartItems().get(0).getQuantity()).isEqualTo(2);
+					return true;
+				}) //
+				.verifyComplete();
+	}
+
+	@Test
+	void unknownItemsLeaveTheCartAlone() {
+		this.cartService.addToCartAtomically("my-cart", "no-such-item") //
+				.as(StepVerifier::create) //
+				.verifyComplete();
+	}
+}
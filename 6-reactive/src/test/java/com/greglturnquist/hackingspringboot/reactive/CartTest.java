@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+/**
+ * Checks that the item-id index inside {@link Cart} tracks its lines.
+ */
+class CartTest {
+
+	Item clock = new Item("clock", "Alf alarm clock", "kids clock", 19.99);
+	Item radio = new Item("radio", "Smurf TV tray", "kids TV tray", 24.99);
+	Item lamp = new Item("lamp", "Lava lamp", "groovy", 9.99);
+
+	@Test
+	void findsAddedLines() {
+		Cart cart = new Cart("cart");
+		cart.addCartItem(new CartItem(this.clock));
+		cart.addCartItem(new CartItem(this.radio));
+
+		assertThat(cart.getCartItem("radio").getItem()).isEqualTo(this.radio);
+		assertThat(cart.getCartItem("lamp")).isNull();
+	}
+
+	@Test
+	void removingALineMovesTheLastOneIntoItsSlot() {
+		Cart cart = new Cart("cart");
+		cart.addCartItem(new CartItem(this.clock));
+		cart.addCartItem(new CartItem(this.radio));
+		cart.addCartItem(new CartItem(this.lamp));
+
+		assertThat(cart.removeCartItem("clock")).isTrue();
+		assertThat(cart.removeCartItem("clock")).isFalse();
+
+		assertThat(cart.getCartItems()).extracting(CartItem::getItemId).containsExactly("lamp", "radio");
+		assertThat(cart.getCartItem("lamp").getItemId()).isEqualTo("lamp");
+		assertThat(cart.getCartItem("radio").getItemId()).isEqualTo("radio");
+
+		assertThat(cart.removeCartItem("radio")).isTrue();
+		assertThat(cart.getCartItems()).extracting(CartItem::getItemId).containsExactly("lamp");
+	}
+
+	@Test
+	void indexIsRebuiltForLinesItNeverSaw() {
+		Cart cart = new Cart("cart", new ArrayList<>(Arrays.asList(new CartItem(this.clock))));
+		assertThat(cart.getCartItem("clock")).isNotNull();
+
+		cart.setCartItems(new ArrayList<>(Arrays.asList(new CartItem(this.radio))));
+		assertThat(cart.getCartItem("clock")).isNull();
+		assertThat(cart.getCartItem("radio")).isNotNull();
+	}
+
+	@Test
+	void hydratingDropsLinesForDeletedItems() {
+		Cart cart = new Cart("cart");
+		cart.addCartItem(new CartItem(this.clock));
+		cart.addCartItem(new CartItem(this.radio));
+		cart.addCartItem(new CartItem(this.lamp));
+		assertThat(cart.itemIds()).containsExactly("clock", "radio", "lamp");
+
+		Map<String, Item> items = new HashMap<>();
+		items.put("clock", this.clock);
+		items.put("lamp", this.lamp);
+
+		assertThat(cart.withItems(items).getCartItems()) //
+				.extracting(CartItem::getItem) //
+				.containsExactly(this.clock, this.lamp);
+		assertThat(cart.getCartItem("radio")).isNull();
+		assertThat(cart.getCartItem("lamp").getItem()).isEqualTo(this.lamp);
+	}
+
+	@Test
+	void indexSurvivesMongoMapping() {
+		MongoMappingContext context = new MongoMappingContext();
+		MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+		converter.afterPropertiesSet();
+
+		Cart original = new Cart("cart");
+		original.addCartItem(new CartItem(this.clock));
+		original.addCartItem(new CartItem(this.radio));
+
+		Document document = new Document();
+		converter.write(original, document);
+		assertThat(document).doesNotContainKey("positions");
+
+		Cart read = converter.read(Cart.class, document);
+		assertThat(read.getCartItem("radio").getQuantity()).isEqualTo(1);
+		assertThat(read.removeCartItem("clock")).isTrue();
+		assertThat(read.getCartItems()).extracting(CartItem::getItemId).containsExactly("radio");
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link CartUpdateCoalescer} turns a burst of adds into one write per cart.
+ */
+class CartUpdateCoalescerTest {
+
+	List<Map<String, Integer>> writes = new CopyOnWriteArrayList<>();
+
+	CartUpdateCoalescer coalescer = new CartUpdateCoalescer(Duration.ofMillis(50), (cartId, quantities) -> {
+		this.writes.add(quantities);
+		return Mono.just(new Cart(cartId));
+	});
+
+	@Test
+	void burstOnOneCartBecomesOneWrite() {
+		Flux.range(0, 100) //
+				.flatMap(i -> this.coalescer.addItem("cart", i % 2 == 0 ? "clock" : "radio"), 100) //
+				.as(StepVerifier::create) //
+				.expectNextCount(100) // every caller hears back
+				.verifyComplete();
+
+		assertThat(this.writes).hasSize(1);
+		assertThat(this.writes.get(0)).containsEntry("clock", 50).containsEntry("radio", 50);
+		assertThat(this.coalescer.pendingCarts()).isZero();
+	}
+
+	@Test
+	void separateCartsAndLaterRequestsGetTheirOwnWrites() {
+		Flux.merge(this.coalescer.addItem("first", "clock"), this.coalescer.addItem("second", "clock")) //
+				.map(Cart::getId) //
+				.as(StepVerifier::create) //
+				.expectNextCount(2) //
+				.verifyComplete();
+
+		this.coalescer.addItem("first", "clock") //
+				.as(StepVerifier::create) //
+				.expectNextMatches(cart -> cart.getId().equals("first")) //
+				.verifyComplete();
+
+		assertThat(this.writes).hasSize(3);
+	}
+
+	@Test
+	void writeFailuresReachEveryCallerInTheBatch() {
+		CartUpdateCoalescer failing = new CartUpdateCoalescer(Duration.ofMillis(10),
+				(cartId, quantities) -> Mono.error(new IllegalStateException("boom")));
+
+		Flux.range(0, 3) //
+				.flatMapDelayError(i -> failing.addItem("cart", "clock") //
+						.onErrorResume(e -> Mono.just(new Cart(e.getMessage()))), 3, 3) //
+				.map(Cart::getId) //
+				.as(StepVerifier::create) //
+				.expectNext("boom", "boom", "boom") //
+				.verifyComplete();
+	}
+
+	@Test
+	void drainWritesAPendingBatchWithoutWaitingOutTheWindow() {
+		CartUpdateCoalescer slow = new CartUpdateCoalescer(Duration.ofMinutes(1), (cartId, quantities) -> {
+			this.writes.add(quantities);
+			return Mono.just(new Cart(cartId));
+		});
+
+		Mono<Cart> add = slow.addItem("cart", "clock").cache();
+		add.subscribe();
+
+		slow.drain("cart") //
+				.as(StepVerifier::create) //
+				.expectComplete() //
+				.verify(Duration.ofSeconds(5));
+
+		assertThat(this.writes).hasSize(1);
+		assertThat(add.block(Duration.ofSeconds(5)).getId()).isEqualTo("cart");
+		assertThat(slow.pendingCarts()).isZero();
+
+		slow.drain("cart") //
+				.as(StepVerifier::create) //
+				.verifyComplete();
+		assertThat(this.writes).hasSize(1);
+	}
+
+	@Test
+	void drainWaitsForEarlierBatchesStillBeingWritten() {
+		Sinks.One<Cart> firstWrite = Sinks.one();
+		CartUpdateCoalescer slow = new CartUpdateCoalescer(Duration.ofMinutes(1), (cartId, quantities) -> {
+			this.writes.add(quantities);
+			return this.writes.size() == 1 ? firstWrite.asMono() : Mono.just(new Cart(cartId));
+		});
+
+		Mono<Cart> first = slow.addItem("cart", "clock").cache();
+		first.subscribe();
+		slow.drain("cart").subscribe();
+		Mono<Cart> second = slow.addItem("cart", "radio").cache();
+		second.subscribe();
+
+		StepVerifier.create(slow.drain("cart")) //
+				.then(() -> assertThat(this.writes).hasSize(2)) //
+				.expectNoEvent(Duration.ofMillis(100)) //
+				.then(() -> firstWrite.tryEmitValue(new Cart("cart"))) //
+				.expectComplete() //
+				.verify(Duration.ofSeconds(5));
+	}
+}
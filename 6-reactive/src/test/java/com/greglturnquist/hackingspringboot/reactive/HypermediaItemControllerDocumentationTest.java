@@ -15,6 +15,7 @@
  */
 package com.greglturnquist.hackingspringboot.reactive;
 
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.restdocs.hypermedia.HypermediaDocumentation.*;
 import static org.springframework.restdocs.operation.preprocess.Preprocessors.*;
@@ -50,10 +51,6 @@ public class HypermediaItemControllerDocumentationTest {
 	void findingAllItems() {
 		when(repository.findAll()) //
 				.thenReturn(Flux.just( //
-						new Item("Alf alarm clock", //
-								"nothing I really need", 19.99)));
-		when(repository.findById((String) null)) //
-				.thenReturn(Mono.just( //
 						new Item("item-1", "Alf alarm clock", //
 								"nothing I really need", 19.99)));
 
@@ -63,9 +60,30 @@ public class HypermediaItemControllerDocumentationTest {
 				.expectBody() //
 				.consumeWith(document("findAll-hypermedia", //
 						preprocessResponse(prettyPrint()))); //
+
+		verify(repository, never()).findById(anyString());
 	}
 	// end::test1[]
 
+	@Test
+	void findingAPageOfItems() {
+		when(repository.findPage(1, null)) //
+				.thenReturn(Flux.just( //
+						new Item("item-1", "Alf alarm clock", //
+								"nothing I really need", 19.99)));
+
+		this.webTestClient.get().uri("/hypermedia/items?limit=1") //
+				.exchange() //
+				.expectStatus().isOk() //
+				.expectBody() //
+				.jsonPath("$._links.next.href").isEqualTo("http://localhost:8080/hypermedia/items?limit=1&after=item-1") //
+				.consumeWith(document("findPage-hypermedia", //
+						preprocessResponse(prettyPrint()), //
+						links( //
+								linkWithRel("self").description("이 페이지에 대한 공식 링크"), //
+								linkWithRel("next").description("다음 페이지 링크"))));
+	}
+
 	// tag::test2[]
 	// @Test
 	void postNewItem() {
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Checks that a remove issued while an add to the same cart is still being coalesced does not overtake it.
+ */
+@DataMongoTest(properties = { "inventory.cart.atomic-updates=false", "inventory.cart.coalesce-window=10s" })
+@Import({ InventoryService.class, ItemCache.class, CartLanes.class })
+class InventoryServiceCoalescingTest {
+
+	@Autowired InventoryService inventoryService;
+
+	@Autowired ItemRepository itemRepository;
+
+	@Autowired CartRepository cartRepository;
+
+	Item item;
+
+	@BeforeEach
+	void setUp() {
+		this.item = this.cartRepository.deleteAll() //
+				.then(this.itemRepository.deleteAll()) //
+				.then(this.itemRepository.save(new Item("Alf alarm clock", "kids clock", 19.99))) //
+				.block();
+	}
+
+	@Test
+	void removeInsideTheWindowRunsAfterTheAdd() {
+		Mono<Cart> add = this.inventoryService.addItemToCartSafely("my-cart", this.item.getId()).cache();
+		add.subscribe();
+
+		this.inventoryService.removeOneFromCartSafely("my-cart", this.item.getId()) //
+				.as(StepVerifier::create) //
+				.expectNextMatches(cart -> cart.getCartItems().isEmpty()) //
+				.expectComplete() //
+				.verify(Duration.ofSeconds(5));
+
+		assertThat(add.block(Duration.ofSeconds(5)).getCartItems()).hasSize(1);
+		assertThat(this.cartRepository.findById("my-cart").block().getCartItems()).isEmpty();
+	}
+}
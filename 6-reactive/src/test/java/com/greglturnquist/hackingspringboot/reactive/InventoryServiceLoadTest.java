@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Hammers a single cart from many concurrent requests and checks that no update is lost.
+ */
+@DataMongoTest
+@Import({ InventoryService.class, ItemCache.class, CartLanes.class })
+public class InventoryServiceLoadTest {
+
+	private static final int CONCURRENT_REQUESTS = 500;
+
+	@Autowired InventoryService inventoryService;
+
+	@Autowired ItemRepository itemRepository;
+
+	@Autowired CartRepository cartRepository;
+
+	Item item;
+
+	@BeforeEach
+	void setUp() {
+		this.item = this.cartRepository.deleteAll() //
+				.then(this.itemRepository.deleteAll()) //
+				.then(this.itemRepository.save(new Item("Alf alarm clock", "kids clock", 19.99))) //
+				.block();
+	}
+
+	@Test
+	void concurrentAddsToOneCartAreNotLost() {
+		Flux.range(0, CONCURRENT_REQUESTS) //
+				.flatMap(i -> this.inventoryService.addItemToCartSafely("load-cart", this.item.getId()), CONCURRENT_REQUESTS) //
+				.then(this.inventoryService.getCartWithItems("load-cart")) //
+				.as(StepVerifier::create) //
+				.expectNextMatches(cart -> {
+					assertThat(cart.getCartItems()).hasSize(1);
+					assertThat(cart.getCartItems().get(0).getItem()).isEqualTo(this.item);
+					assertThat(cart.getCartItems().get(0).getQuantity()).isEqualTo(CONCURRENT_REQUESTS);
+					return true;
+				}) //
+				.verifyComplete();
+	}
+
+	@Test
+	void concurrentRemovesEmptyTheCart() {
+		Flux.range(0, CONCURRENT_REQUESTS) //
+				.concatMap(i -> this.inventoryService.addItemToCartSafely("load-cart", this.item.getId())) //
+				.thenMany(Flux.range(0, CONCURRENT_REQUESTS)) //
+				.flatMap(i -> this.inventoryService.removeOneFromCartSafely("load-cart", this.item.getId()), CONCURRENT_REQUESTS) //
+				.then(this.cartRepository.findById("load-cart")) //
+				.as(StepVerifier::create) //
+				.expectNextMatches(cart -> {
+					assertThat(cart.getCartItems()).isEmpty();
+					return true;
+				}) //
+				.verifyComplete();
+	}
+
+	@Test
+	void removingAnItemThatIsNotInTheCartChangesNothing() {
+		this.inventoryService.addItemToCartSafely("load-cart", this.item.getId()) //
+				.then(this.inventoryService.removeOneFromCartSafely("load-cart", "not-in-the-cart")) //
+				.as(StepVerifier::create) //
+				.verifyComplete();
+	}
+}
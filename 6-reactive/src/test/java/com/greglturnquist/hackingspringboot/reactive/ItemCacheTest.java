@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import org.bson.Document;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+
+/**
+ * Exercises {@link ItemCache} against a mocked {@link ItemRepository}.
+ */
+class ItemCacheTest {
+
+	Item clock = new Item("clock", "Alf alarm clock", "kids clock", 19.99);
+	Item radio = new Item("radio", "Smurf TV tray", "kids TV tray", 24.99);
+
+	ItemRepository repository = mock(ItemRepository.class);
+
+	ItemCache cache = new ItemCache(this.repository, 100, Duration.ofMinutes(5));
+
+	@Test
+	void concurrentMissesShareOneQuery() {
+		when(this.repository.findById("clock")).thenReturn(Mono.just(this.clock).delayElement(Duration.ofMillis(50)));
+
+		Flux.range(0, 10) //
+				.flatMap(i -> this.cache.findById("clock")) //
+				.as(StepVerifier::create) //
+				.expectNextCount(10) //
+				.verifyComplete();
+
+		verify(this.repository, times(1)).findById("clock");
+	}
+
+	@Test
+	void unknownItemsAreNotCached() {
+		when(this.repository.findById("nothing")).thenReturn(Mono.empty());
+
+		this.cache.findById("nothing").as(StepVerifier::create).verifyComplete();
+		this.cache.findById("nothing").as(StepVerifier::create).verifyComplete();
+
+		verify(this.repository, times(2)).findById("nothing");
+	}
+
+	@Test
+	void bulkLookupsOnlyFetchTheMisses() {
+		when(this.repository.findById("clock")).thenReturn(Mono.just(this.clock));
+		when(this.repository.findAllById(ArgumentMatchers.<Publisher<String>> any())).thenReturn(Flux.just(this.radio));
+
+		this.cache.findById("clock").block();
+
+		this.cache.findAllById(Arrays.asList("clock", "radio", "nothing")) //
+				.as(StepVerifier::create) //
+				.expectNextMatches(items -> {
+					assertThat(items).containsOnlyKeys("clock", "radio");
+					return true;
+				}) //
+				.verifyComplete();
+
+		verify(this.repository, never()).findById("radio");
+	}
+
+	@Test
+	void writesEvictTheItemAndTheInventory() {
+		when(this.repository.findById("clock")).thenReturn(Mono.just(this.clock));
+		when(this.repository.findAll()).thenReturn(Flux.just(this.clock));
+
+		this.cache.findById("clock").block();
+		this.cache.findAll().blockLast();
+		this.cache.findAll().blockLast();
+		verify(this.repository, times(1)).findAll();
+
+		this.cache.onAfterSave(new AfterSaveEvent<>(this.clock, new Document("_id", "clock"), "item"));
+
+		this.cache.findById("clock").block();
+		this.cache.findAll().blockLast();
+		verify(this.repository, times(2)).findById("clock");
+		verify(this.repository, times(2)).findAll();
+
+		this.cache.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "clock"), Item.class, "item"));
+
+		this.cache.findById("clock").block();
+		verify(this.repository, times(3)).findById("clock");
+	}
+
+	@Test
+	void publishesCacheMetrics() {
+		when(this.repository.findById("clock")).thenReturn(Mono.just(this.clock));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		this.cache.bindTo(registry);
+
+		this.cache.findById("clock").block();
+		this.cache.findById("clock").block();
+
+		assertThat(registry.get("cache.gets").tag("cache", "items").tag("result", "hit").functionCounter().count())
+				.isEqualTo(1);
+		assertThat(registry.get("cache.gets").tag("cache", "items").tag("result", "miss").functionCounter().count())
+				.isEqualTo(1);
+		assertThat(registry.get("cache.evictions").tag("cache", "items").functionCounter()).isNotNull();
+	}
+
+	/**
+	 * {@code deleteAll()} removes by collection name alone, so only a real template shows whether the cache hears it.
+	 */
+	@Nested
+	@DataMongoTest
+	@Import(ItemCache.class)
+	class AgainstMongo {
+
+		@Autowired ItemCache itemCache;
+
+		@Autowired ItemRepository itemRepository;
+
+		@Test
+		void deleteAllEmptiesTheCache() {
+			Item saved = this.itemRepository.deleteAll() //
+					.then(this.itemRepository.save(new Item("Alf alarm clock", "kids clock", 19.99))) //
+					.block();
+
+			assertThat(this.itemCache.findById(saved.getId()).block()).isEqualTo(saved);
+			assertThat(this.itemCache.findAll().collectList().block()).containsExactly(saved);
+
+			this.itemRepository.deleteAll().block();
+
+			this.itemCache.findById(saved.getId()).as(StepVerifier::create).verifyComplete();
+			this.itemCache.findAll().as(StepVerifier::create).verifyComplete();
+		}
+	}
+}
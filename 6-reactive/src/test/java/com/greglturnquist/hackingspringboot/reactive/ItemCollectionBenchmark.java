@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.*;
+
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+
+/**
+ * Compares the hypermedia collection endpoint against the per-item lookup it replaced, over an
+ * in-memory repository that counts the queries it answers.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath org.openjdk.jmh.Main ItemCollectionBenchmark"}, or {@link #main} from an IDE. The
+ * number of repository calls per collection rendered is printed when each trial ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemCollectionBenchmark {
+
+	@Param({ "10000" }) int items;
+
+	final AtomicLong queries = new AtomicLong();
+	final AtomicLong collections = new AtomicLong();
+
+	ItemRepository repository;
+	HypermediaItemController controller;
+
+	@Setup
+	public void setUp() {
+		// Outside a Spring Boot application logging defaults to DEBUG, which would dominate the timings.
+		LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+
+		Map<String, Item> catalog = new LinkedHashMap<>();
+		for (int i = 0; i < this.items; i++) {
+			Item item = new Item("item-" + i, "Item " + i, "description " + i, i);
+			catalog.put(item.getId(), item);
+		}
+
+		this.repository = (ItemRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ItemRepository.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "findAll":
+							return Flux.defer(() -> {
+								this.queries.incrementAndGet();
+								return Flux.fromIterable(catalog.values());
+							});
+						case "findById":
+							return Mono.fromSupplier(() -> {
+								this.queries.incrementAndGet();
+								return catalog.get(args[0]);
+							});
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+
+		this.controller = new HypermediaItemController(this.repository);
+	}
+
+	@Benchmark
+	public CollectionModel<EntityModel<Item>> singleQuery() {
+		this.collections.incrementAndGet();
+		return this.controller.findAll().block();
+	}
+
+	/**
+	 * What {@code findAll} did before: re-read every streamed item through {@code findOne}.
+	 */
+	@Benchmark
+	public CollectionModel<EntityModel<Item>> queryPerItem() {
+		this.collections.incrementAndGet();
+		return this.repository.findAll() //
+				.flatMap(item -> this.controller.findOne(item.getId())) //
+				.collectList() //
+				.flatMap(entityModels -> linkTo(methodOn(HypermediaItemController.class) //
+						.findAll()).withSelfRel() //
+								.toMono() //
+								.map(selfLink -> CollectionModel.of(entityModels, selfLink))) //
+				.block();
+	}
+
+	@TearDown
+	public void report() {
+		System.out.printf("%n%d items: %.1f queries per collection%n", this.items,
+				(double) this.queries.get() / this.collections.get());
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder() //
+				.include(ItemCollectionBenchmark.class.getSimpleName()) //
+				.build()).run();
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import org.bson.Document;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+
+/**
+ * Exercises {@link ItemSuggestions} against a mocked {@link ItemRepository}.
+ */
+class ItemSuggestionsTest {
+
+	ItemRepository repository = mock(ItemRepository.class);
+
+	ItemSuggestions suggestions = new ItemSuggestions(this.repository);
+
+	@Test
+	void suggestsNamesByPrefixIgnoringCase() {
+		when(this.repository.findAll()).thenReturn(Flux.just( //
+				new Item("1", "Smurf TV tray", "kids TV tray", 24.99), //
+				new Item("2", "Alf alarm clock", "kids clock", 19.99), //
+				new Item("3", "Smurf lamp", "blue", 9.99), //
+				new Item("4", "Snow globe", "winter", 4.99)));
+
+		this.suggestions.load();
+
+		assertThat(this.suggestions.suggest("sm", 10)).containsExactly("Smurf lamp", "Smurf TV tray");
+		assertThat(this.suggestions.suggest("S", 2)).containsExactly("Smurf lamp", "Smurf TV tray");
+		assertThat(this.suggestions.suggest("ALF ", 10)).containsExactly("Alf alarm clock");
+		assertThat(this.suggestions.suggest("x", 10)).isEmpty();
+		assertThat(this.suggestions.suggest("", 10)).isEmpty();
+	}
+
+	@Test
+	void followsWrites() {
+		when(this.repository.findAll()).thenReturn(Flux.empty());
+		this.suggestions.load();
+
+		save(new Item("1", "Lava lamp", "groovy", 9.99));
+		save(new Item("2", "lava LAMP", "groovier", 19.99));
+		assertThat(this.suggestions.suggest("lava", 10)).containsExactly("Lava lamp");
+
+		save(new Item("1", "Desk lamp", "groovy", 9.99));
+		assertThat(this.suggestions.suggest("lava", 10)).containsExactly("Lava lamp");
+		assertThat(this.suggestions.suggest("desk", 10)).containsExactly("Desk lamp");
+
+		this.suggestions.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "2"), Item.class, "item"));
+		assertThat(this.suggestions.suggest("lava", 10)).isEmpty();
+	}
+
+	@Test
+	void deletesThatNameNoSingleItemReload() {
+		when(this.repository.findAll()).thenReturn(Flux.just(new Item("1", "Lava lamp", "groovy", 9.99)));
+		this.suggestions.load();
+		assertThat(this.suggestions.suggest("lava", 10)).containsExactly("Lava lamp");
+
+		// What deleteAll() publishes: no domain type, no id.
+		when(this.repository.findAll()).thenReturn(Flux.empty());
+		this.suggestions.onApplicationEvent(new AfterDeleteEvent<>(new Document(), null, "item"));
+		assertThat(this.suggestions.suggest("lava", 10)).isEmpty();
+
+		// A typed delete by criteria rather than id.
+		when(this.repository.findAll()).thenReturn(Flux.just(new Item("2", "Desk lamp", "plain", 9.99)));
+		save(new Item("3", "Lava lamp", "groovy", 9.99));
+		this.suggestions.onApplicationEvent(new AfterDeleteEvent<>(
+				new Document("_id", new Document("$in", Arrays.asList("3"))), Item.class, "item"));
+		assertThat(this.suggestions.suggest("lava", 10)).isEmpty();
+		assertThat(this.suggestions.suggest("desk", 10)).containsExactly("Desk lamp");
+	}
+
+	@Test
+	void ranksNamesCarriedByMoreItemsFirst() {
+		when(this.repository.findAll()).thenReturn(Flux.just( //
+				new Item("1", "Lamp shade", "plain", 4.99), //
+				new Item("2", "Lava lamp", "groovy", 9.99), //
+				new Item("3", "Lava lamp", "groovier", 19.99), //
+				new Item("4", "Ladder", "tall", 29.99), //
+				new Item("5", "lava LAMP", "grooviest", 29.99), //
+				new Item("6", "Ladder", "taller", 39.99)));
+		this.suggestions.load();
+
+		assertThat(this.suggestions.suggest("la", 2)).containsExactly("Lava lamp", "Ladder");
+		assertThat(this.suggestions.suggest("la", 10)).containsExactly("Lava lamp", "Ladder", "Lamp shade");
+	}
+
+	@Test
+	void itemsDeletedWhileLoadingAreNotSuggested() {
+		Sinks.Many<Item> read = Sinks.many().unicast().onBackpressureBuffer();
+		when(this.repository.findAll()).thenReturn(read.asFlux());
+
+		this.suggestions.load();
+		this.suggestions.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "1"), Item.class, "item"));
+		read.tryEmitNext(new Item("1", "Lava lamp", "groovy", 9.99));
+		read.tryEmitNext(new Item("2", "Desk lamp", "plain", 9.99));
+		read.tryEmitComplete();
+
+		assertThat(this.suggestions.suggest("lava", 10)).isEmpty();
+		assertThat(this.suggestions.suggest("desk", 10)).containsExactly("Desk lamp");
+	}
+
+	@Test
+	void capsTheNumberOfSuggestions() {
+		when(this.repository.findAll()).thenReturn(Flux.range(0, 100) //
+				.map(i -> new Item("item-" + i, "Item " + i, "description", i)));
+		this.suggestions.load();
+
+		assertThat(this.suggestions.suggest("item", 1000)).hasSize(ItemSuggestions.MAX_SUGGESTIONS);
+	}
+
+	private void save(Item item) {
+		this.suggestions.onAfterSave(new AfterSaveEvent<>(item, new Document("_id", item.getId()), "item"));
+	}
+
+	@Nested
+	@DataMongoTest
+	@Import(ItemSuggestions.class)
+	class AgainstMongo {
+
+		@Autowired ItemSuggestions itemSuggestions;
+
+		@Autowired ItemRepository itemRepository;
+
+		@Test
+		void deleteAllClearsTheSuggestions() {
+			this.itemRepository.deleteAll() //
+					.then(this.itemRepository.save(new Item("Lava lamp", "groovy", 9.99))) //
+					.block();
+			assertThat(this.itemSuggestions.suggest("lava", 10)).containsExactly("Lava lamp");
+
+			this.itemRepository.deleteAll().block();
+
+			assertThat(this.itemSuggestions.suggest("lava", 10)).isEmpty();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+/**
+ * Checks that {@link LegacyCartLines} turns carts that embed whole items into ones that only reference them.
+ */
+@DataMongoTest
+class LegacyCartLinesTest {
+
+	@Autowired MongoOperations mongo;
+
+	@Autowired CartRepository cartRepository;
+
+	ObjectId clockId = new ObjectId();
+
+	@BeforeEach
+	void setUp() {
+		this.mongo.dropCollection(Cart.class);
+	}
+
+	@Test
+	void embeddedItemsBecomeItemIds() {
+		Document clock = new Document("_id", this.clockId) //
+				.append("name", "Alf alarm clock") //
+				.append("description", "kids clock") //
+				.append("price", 19.99);
+		Document tray = new Document("_id", "tray") //
+				.append("name", "Smurf TV tray") //
+				.append("price", 24.99);
+		this.mongo.insert(new Document("_id", "legacy") //
+				.append("cartItems", Arrays.asList( //
+						new Document("item", clock).append("quantity", 2), //
+						new Document("item", tray).append("quantity", 1))), //
+				"cart");
+
+		assertThat(LegacyCartLines.migrate(this.mongo)).isEqualTo(1);
+
+		Cart cart = this.cartRepository.findById("legacy").block();
+		assertThat(cart.getCartItems()).hasSize(2);
+		CartItem first = cart.getCartItem(this.clockId.toHexString());
+		assertThat(first.getPrice()).isEqualTo(19.99);
+		assertThat(first.getQuantity()).isEqualTo(2);
+		assertThat(cart.getCartItem("tray").getQuantity()).isEqualTo(1);
+
+		assertThat(LegacyCartLines.migrate(this.mongo)).isZero();
+	}
+
+	@Test
+	void currentCartsAreLeftAlone() {
+		Cart current = new Cart("current");
+		current.addCartItem(new CartItem(new Item("clock", "Alf alarm clock", "kids clock", 19.99)));
+		this.cartRepository.save(current).block();
+
+		assertThat(LegacyCartLines.migrate(this.mongo)).isZero();
+		assertThat(this.cartRepository.findById("current").block()).isEqualTo(current);
+	}
+}
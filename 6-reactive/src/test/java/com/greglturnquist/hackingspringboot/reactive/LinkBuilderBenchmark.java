@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+
+/**
+ * Compares building the self link of every item in a collection through {@link WebFluxLinkBuilder} against
+ * expanding a {@link LinkTemplate}, with and without an affordance, inside a request.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath org.openjdk.jmh.Main LinkBuilderBenchmark"}, or {@link #main} from an IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkBuilderBenchmark {
+
+	@Param({ "1000" }) int items;
+
+	List<String> ids;
+	Context context;
+	LinkTemplate itemLink;
+	LinkTemplate itemWithAffordancesLink;
+
+	@Setup
+	public void setUp() {
+		// Outside a Spring Boot application logging defaults to DEBUG, which would dominate the timings.
+		LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+
+		this.ids = IntStream.range(0, this.items) //
+				.mapToObj(i -> "item-" + i) //
+				.collect(Collectors.toList());
+		this.context = Context.of(ServerWebExchangeContextFilter.EXCHANGE_CONTEXT_ATTRIBUTE,
+				MockServerWebExchange.from(MockServerHttpRequest.get("http://localhost:8080/affordances/items")));
+
+		AffordancesItemController controller = methodOn(AffordancesItemController.class);
+		this.itemLink = LinkTemplate.of(linkTo(controller.findOne(LinkTemplate.ID)).withSelfRel());
+		this.itemWithAffordancesLink = LinkTemplate.of(linkTo(controller.findOne(LinkTemplate.ID)).withSelfRel() //
+				.andAffordance(controller.updateItem(null, LinkTemplate.ID)));
+	}
+
+	@Benchmark
+	public List<Link> linkBuilder() {
+		return Flux.fromIterable(this.ids) //
+				.concatMap(id -> linkTo(methodOn(AffordancesItemController.class).findOne(id)).withSelfRel() //
+						.toMono()) //
+				.collectList() //
+				.contextWrite(this.context) //
+				.block();
+	}
+
+	@Benchmark
+	public List<Link> linkTemplate() {
+		return LinkTemplate.baseUri(this.itemLink) //
+				.flatMapMany(baseUri -> Flux.fromIterable(this.ids) //
+						.map(id -> this.itemLink.expand(baseUri, id, IanaLinkRelations.SELF))) //
+				.collectList() //
+				.contextWrite(this.context) //
+				.block();
+	}
+
+	@Benchmark
+	public List<Link> linkBuilderWithAffordance() {
+		return Flux.fromIterable(this.ids) //
+				.concatMap(id -> {
+					AffordancesItemController controller = methodOn(AffordancesItemController.class);
+					return linkTo(controller.findOne(id)).withSelfRel() //
+							.andAffordance(controller.updateItem(null, id)) //
+							.toMono();
+				}) //
+				.collectList() //
+				.contextWrite(this.context) //
+				.block();
+	}
+
+	@Benchmark
+	public List<Link> linkTemplateWithAffordance() {
+		return LinkTemplate.baseUri(this.itemWithAffordancesLink) //
+				.flatMapMany(baseUri -> Flux.fromIterable(this.ids) //
+						.map(id -> this.itemWithAffordancesLink.expand(baseUri, id, IanaLinkRelations.SELF))) //
+				.collectList() //
+				.contextWrite(this.context) //
+				.block();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder() //
+				.include(LinkBuilderBenchmark.class.getSimpleName()) //
+				.build()).run();
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+import org.junit.jupiter.api.Test;
+import org.springframework.hateoas.AffordanceModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+
+/**
+ * Checks that {@link LinkTemplate} expands to the links {@link WebFluxLinkBuilder} would build, affordances
+ * included.
+ */
+class LinkTemplateTest {
+
+	Context request = Context.of(ServerWebExchangeContextFilter.EXCHANGE_CONTEXT_ATTRIBUTE,
+			MockServerWebExchange.from(MockServerHttpRequest.get("http://example.com/affordances/items")));
+
+	LinkTemplate itemLink = LinkTemplate.of(linkTo(methodOn(AffordancesItemController.class) //
+			.findOne(LinkTemplate.ID)).withSelfRel() //
+					.andAffordance(methodOn(AffordancesItemController.class).updateItem(null, LinkTemplate.ID)));
+
+	@Test
+	void affordancesTargetTheExpandedLink() {
+		LinkTemplate.baseUri(this.itemLink) //
+				.map(baseUri -> this.itemLink.expand(baseUri, "item 1", IanaLinkRelations.SELF)) //
+				.contextWrite(this.request) //
+				.as(StepVerifier::create) //
+				.assertNext(link -> {
+					assertThat(link.getHref()).isEqualTo("http://example.com/affordances/items/item%201");
+					List<AffordanceModel> models = new ArrayList<>();
+					link.getAffordances().forEach(affordance -> affordance.forEach(models::add));
+
+					assertThat(models).extracting(AffordanceModel::getName).contains("updateItem");
+					assertThat(models).extracting(AffordanceModel::getURI).containsOnly(link.getHref());
+				}) //
+				.verifyComplete();
+	}
+
+	@Test
+	void theFirstRequestDoesNotLeakItsHostIntoLaterOnes() {
+		LinkTemplate.baseUri(this.itemLink) //
+				.contextWrite(this.request) //
+				.block();
+
+		Link link = LinkTemplate.baseUri(this.itemLink) //
+				.map(baseUri -> this.itemLink.expand(baseUri, "item-1", IanaLinkRelations.SELF)) //
+				.contextWrite(Context.of(ServerWebExchangeContextFilter.EXCHANGE_CONTEXT_ATTRIBUTE, //
+						MockServerWebExchange.from(MockServerHttpRequest.get("https://other.example.com/")))) //
+				.block();
+
+		assertThat(link.getHref()).isEqualTo("https://other.example.com/affordances/items/item-1");
+	}
+
+	@Test
+	void expandingBeforeResolvingFails() {
+		assertThatIllegalStateException() //
+				.isThrownBy(() -> this.itemLink.expand("", "item-1", IanaLinkRelations.SELF));
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.client;
+
+/**
+ * The server's outcome for one item sent over {@code newItems.channel}: the id it was saved under, or why it wasn't
+ * saved. {@code sequence} is the item's position in the uploaded stream, counting from zero.
+ */
+public class ItemAck {
+
+	private long sequence;
+	private String id;
+	private String error;
+
+	private ItemAck() {}
+
+	ItemAck(long sequence, String id, String error) {
+		this.sequence = sequence;
+		this.id = id;
+		this.error = error;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	@Override
+	public String toString() {
+		return "ItemAck{" + "sequence=" + sequence + ", id='" + id + '\'' + ", error='" + error + '\'' + '}';
+	}
+}
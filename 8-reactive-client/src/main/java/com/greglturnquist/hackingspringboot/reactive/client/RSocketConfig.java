@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.client;
+
+import static io.rsocket.metadata.WellKnownMimeType.*;
+import static org.springframework.http.MediaType.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.rsocket.core.Resume;
+import io.rsocket.lease.Leases;
+import io.rsocket.loadbalance.LoadbalanceStrategy;
+import io.rsocket.loadbalance.LoadbalanceTarget;
+import io.rsocket.loadbalance.RoundRobinLoadbalanceStrategy;
+import io.rsocket.loadbalance.WeightedLoadbalanceStrategy;
+import io.rsocket.resume.InMemoryResumableFramesStore;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.rsocket.messaging.RSocketStrategiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.util.MimeType;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * The {@link RSocketRequester} the client uses to reach the inventory servers.
+ * <p>
+ * It holds {@code inventory.rsocket.connections-per-target} connections to every server in
+ * {@code inventory.rsocket.targets} and picks one for each request, either {@code round-robin} or the
+ * {@code least-loaded} by outstanding requests and latency. Connections are opened on first use, retrying with a
+ * backoff from {@code min-backoff} up to {@code max-backoff}.
+ * <p>
+ * A connection that drops, or whose peer stops answering keepalives, first tries to resume its session, keeping its
+ * streams and resending up to {@code inventory.rsocket.resume.buffer-size} of frames the server may have missed. If
+ * that fails within {@code inventory.rsocket.resume.session-duration}, as it does once the server has restarted, the
+ * connection leaves the pool, and requests go to the rest until the next {@code refresh-interval} reopens it. While
+ * a server stays unreachable, {@code round-robin} keeps handing it requests that fail once its connection attempts
+ * run out; {@code least-loaded} mostly steers around it.
+ * <p>
+ * Every connection honours the leases its server grants: past what the server has said it can take, requests fail
+ * straight away with a {@link io.rsocket.lease.MissingLeaseException} instead of queueing up on the server, and
+ * {@code least-loaded} prefers connections with lease left. That includes requests a new connection is handed
+ * before its first lease has arrived.
+ * <p>
+ * Items travel as {@code inventory.rsocket.data-mime-type}: {@code application/json}, {@code application/cbor}, or
+ * the more compact and much cheaper {@value BinaryItemCodec#MIME_TYPE} of {@link BinaryItemCodec}. The server
+ * decodes all three.
+ */
+@Configuration
+public class RSocketConfig {
+
+	enum Strategy {
+		ROUND_ROBIN, LEAST_LOADED
+	}
+
+	@Bean
+	RSocketStrategiesCustomizer binaryItemCodec() {
+		BinaryItemCodec codec = new BinaryItemCodec();
+		return strategies -> strategies.encoder(codec).decoder(codec);
+	}
+
+	@Bean
+	RSocketRequester inventoryRequester(RSocketRequester.Builder builder, //
+			@Value("${inventory.rsocket.data-mime-type:application/json}") String dataMimeType, //
+			@Value("${inventory.rsocket.targets:localhost:7000}") List<String> targets, //
+			@Value("${inventory.rsocket.connections-per-target:2}") int connectionsPerTarget, //
+			@Value("${inventory.rsocket.strategy:least-loaded}") Strategy strategy, //
+			@Value("${inventory.rsocket.keep-alive-interval:5s}") Duration keepAliveInterval, //
+			@Value("${inventory.rsocket.keep-alive-max-lifetime:30s}") Duration keepAliveMaxLifetime, //
+			@Value("${inventory.rsocket.refresh-interval:5s}") Duration refreshInterval, //
+			@Value("${inventory.rsocket.reconnect.max-attempts:5}") long reconnectAttempts, //
+			@Value("${inventory.rsocket.reconnect.min-backoff:100ms}") Duration minBackoff, //
+			@Value("${inventory.rsocket.reconnect.max-backoff:10s}") Duration maxBackoff, //
+			@Value("${inventory.rsocket.resume.session-duration:2m}") Duration sessionDuration, //
+			@Value("${inventory.rsocket.resume.buffer-size:1MB}") DataSize resumeBufferSize) {
+		return builder //
+				.dataMimeType(MimeType.valueOf(dataMimeType)) //
+				.metadataMimeType(parseMediaType(MESSAGE_RSOCKET_ROUTING.toString())) //
+				.rsocketConnector(connector -> connector //
+						.keepAlive(keepAliveInterval, keepAliveMaxLifetime) //
+						.reconnect(Retry.backoff(reconnectAttempts, minBackoff).maxBackoff(maxBackoff)) //
+						.resume(new Resume() //
+								.sessionDuration(sessionDuration) //
+								.storeFactory(token -> new InMemoryResumableFramesStore("client", //
+										(int) resumeBufferSize.toBytes()))) //
+						.lease(Leases::create)) //
+				.transports(refreshed(loadbalanceTargets(targets, connectionsPerTarget), refreshInterval), //
+						loadbalanceStrategy(strategy));
+	}
+
+	/**
+	 * The pool drops a target's connection once it closes and only replaces it when the target list is published
+	 * again, so publish the same list every {@code refreshInterval}.
+	 */
+	private static Flux<List<LoadbalanceTarget>> refreshed(List<LoadbalanceTarget> targets, Duration refreshInterval) {
+		return Flux.interval(Duration.ZERO, refreshInterval) //
+				.map(tick -> targets);
+	}
+
+	/**
+	 * One target per connection: the pool keeps a single connection per key, so {@code host:port#n} keys give
+	 * {@code connectionsPerTarget} connections to each {@code host:port}.
+	 */
+	static List<LoadbalanceTarget> loadbalanceTargets(List<String> targets, int connectionsPerTarget) {
+		List<LoadbalanceTarget> loadbalanceTargets = new ArrayList<>(targets.size() * connectionsPerTarget);
+		for (String target : targets) {
+			int colon = target.lastIndexOf(':');
+			if (colon < 0) {
+				throw new IllegalArgumentException("Expected host:port but got '" + target + "'");
+			}
+			String host = target.substring(0, colon).trim();
+			int port = Integer.parseInt(target.substring(colon + 1).trim());
+			for (int n = 0; n < connectionsPerTarget; n++) {
+				loadbalanceTargets.add(LoadbalanceTarget.from(host + ":" + port + "#" + n, //
+						TcpClientTransport.create(host, port)));
+			}
+		}
+		return loadbalanceTargets;
+	}
+
+	private static LoadbalanceStrategy loadbalanceStrategy(Strategy strategy) {
+		return strategy == Strategy.ROUND_ROBIN //
+				? new RoundRobinLoadbalanceStrategy() //
+				: WeightedLoadbalanceStrategy.create();
+	}
+}
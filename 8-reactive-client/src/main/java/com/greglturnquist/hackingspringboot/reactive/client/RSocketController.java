@@ -16,18 +16,21 @@
 
 package com.greglturnquist.hackingspringboot.reactive.client;
 
-import static io.rsocket.metadata.WellKnownMimeType.*;
-import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.MediaType.*;
 
 import java.net.URI;
 import java.time.Duration;
 
+import io.rsocket.lease.MissingLeaseException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -40,15 +43,10 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController // <1>
 public class RSocketController {
 
-	private final Mono<RSocketRequester> requester; // <2>
+	private final RSocketRequester requester; // <2>
 
-	public RSocketController(RSocketRequester.Builder builder) { // <3>
-		this.requester = builder //
-				.dataMimeType(APPLICATION_JSON) // <4>
-				.metadataMimeType(parseMediaType(MESSAGE_RSOCKET_ROUTING.toString())) // <5>
-				.connectTcp("localhost", 7000) // <6>
-				.retry(5) // <7>
-				.cache(); // <8>
+	public RSocketController(RSocketRequester requester) { // <3>
+		this.requester = requester;
 	}
 	// end::code[]
 
@@ -56,10 +54,9 @@ public class RSocketController {
 	@PostMapping("/items/request-response") // <1>
 	Mono<ResponseEntity<?>> addNewItemUsingRSocketRequestResponse(@RequestBody Item item) {
 		return this.requester //
-				.flatMap(rSocketRequester -> rSocketRequester //
-						.route("newItems.request-response") // <2>
-						.data(item) // <3>
-						.retrieveMono(Item.class)) // <4>
+				.route("newItems.request-response") // <2>
+				.data(item) // <3>
+				.retrieveMono(Item.class) // <4>
 				.map(savedItem -> ResponseEntity.created( // <5>
 						URI.create("/items/request-response")).body(savedItem));
 	}
@@ -67,21 +64,19 @@ public class RSocketController {
 
 	@GetMapping(value = "/items/request-stream", produces = MediaType.APPLICATION_NDJSON_VALUE) // <1>
 	Flux<Item> findItemsUsingRSocketRequestStream() {
-		return this.requester //
-				.flatMapMany(rSocketRequester -> rSocketRequester // <2>
-						.route("newItems.request-stream") // <3>
-						.retrieveFlux(Item.class) // <4>
-						.delayElements(Duration.ofSeconds(1))); // <5>
+		return this.requester // <2>
+				.route("newItems.request-stream") // <3>
+				.retrieveFlux(Item.class) // <4>
+				.delayElements(Duration.ofSeconds(1)); // <5>
 	}
 
 	// tag::fire-and-forget[]
 	@PostMapping("/items/fire-and-forget")
 	Mono<ResponseEntity<?>> addNewItemUsingRSocketFireAndForget(@RequestBody Item item) {
 		return this.requester //
-				.flatMap(rSocketRequester -> rSocketRequester //
-						.route("newItems.fire-and-forget") // <1>
-						.data(item) //
-						.send()) // <2>
+				.route("newItems.fire-and-forget") // <1>
+				.data(item) //
+				.send() // <2>
 				.then( // <3>
 						Mono.just( //
 								ResponseEntity.created( //
@@ -89,13 +84,36 @@ public class RSocketController {
 	}
 	// end::fire-and-forget[]
 
+	/**
+	 * Bulk upload: stream an NDJSON body of items straight into {@code newItems.channel} as it arrives and stream
+	 * back the server's acknowledgement for each item, also as NDJSON.
+	 */
+	@PostMapping(value = "/items/channel", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+			produces = MediaType.APPLICATION_NDJSON_VALUE)
+	Flux<ItemAck> addNewItemsUsingRSocketRequestChannel(@RequestBody Flux<Item> items) {
+		return this.requester //
+				.route("newItems.channel") //
+				.data(items, Item.class) //
+				.retrieveFlux(ItemAck.class);
+	}
+
 	// tag::request-stream[]
 	@GetMapping(value = "/items", produces = TEXT_EVENT_STREAM_VALUE) // <1>
 	Flux<Item> liveUpdates() {
 		return this.requester //
-				.flatMapMany(rSocketRequester -> rSocketRequester //
-						.route("newItems.monitor") // <2>
-						.retrieveFlux(Item.class)); // <3>
+				.route("newItems.monitor") // <2>
+				.retrieveFlux(Item.class) // <3>
+				// A resumed session keeps the stream going. Past that, such as after a server restart, subscribe
+				// again; items saved in between are missed.
+				.retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(100)).maxBackoff(Duration.ofSeconds(10)));
 	}
 	// end::request-stream[]
+
+	/**
+	 * The server has no lease left to give this client, so it is shedding load: tell the caller to back off.
+	 */
+	@ExceptionHandler(MissingLeaseException.class)
+	ResponseEntity<?> serverBusy(MissingLeaseException e) {
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+	}
 }
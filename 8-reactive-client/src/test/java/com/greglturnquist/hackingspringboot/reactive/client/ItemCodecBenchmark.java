@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.client;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.util.MimeType;
+
+/**
+ * Compares the cost of turning one {@link Item} into an RSocket payload and back under each data MIME type the
+ * client can use: JSON, CBOR and {@link BinaryItemCodec}. The codecs are the ones the RSocket strategies pick.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath org.openjdk.jmh.Main ItemCodecBenchmark -prof gc"}, or {@link #main} from an IDE.
+ * The {@code gc} profiler adds the bytes allocated per item ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemCodecBenchmark {
+
+	static final ResolvableType ITEM = ResolvableType.forClass(Item.class);
+
+	@Param({ "application/json", "application/cbor", BinaryItemCodec.MIME_TYPE }) String mimeType;
+
+	Item item = new Item("5f1e0a2b9c3d4e5f6a7b8c9d", "Alf alarm clock", "kids clock with a loud alarm", 19.99);
+
+	DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+	MimeType type;
+	Encoder<Object> encoder;
+	Decoder<Object> decoder;
+	byte[] encoded;
+
+	@Setup
+	public void setUp() {
+		// Without a logging configuration everything logs at DEBUG, the codecs included.
+		LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.INFO);
+
+		this.type = MimeType.valueOf(this.mimeType);
+		if (this.mimeType.equals("application/json")) {
+			this.encoder = new Jackson2JsonEncoder();
+			this.decoder = new Jackson2JsonDecoder();
+		} else if (this.mimeType.equals("application/cbor")) {
+			this.encoder = new Jackson2CborEncoder();
+			this.decoder = new Jackson2CborDecoder();
+		} else {
+			BinaryItemCodec codec = new BinaryItemCodec();
+			this.encoder = codec;
+			this.decoder = codec;
+		}
+
+		DataBuffer buffer = encode();
+		this.encoded = new byte[buffer.readableByteCount()];
+		buffer.read(this.encoded);
+	}
+
+	@Benchmark
+	public DataBuffer encode() {
+		return this.encoder.encodeValue(this.item, this.bufferFactory, ITEM, this.type, Collections.emptyMap());
+	}
+
+	@Benchmark
+	public Object decode() {
+		return this.decoder.decode(this.bufferFactory.wrap(this.encoded), ITEM, this.type, Collections.emptyMap());
+	}
+
+	/**
+	 * Encode and decode, as an item crossing from server to client costs.
+	 */
+	@Benchmark
+	public Object roundTrip() {
+		// Decoding releases the buffer.
+		return this.decoder.decode(encode(), ITEM, this.type, Collections.emptyMap());
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder() //
+				.include(ItemCodecBenchmark.class.getSimpleName()) //
+				.addProfiler("gc") //
+				.build()).run();
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.client;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import io.rsocket.core.RSocketServer;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+import org.springframework.util.MimeType;
+
+/**
+ * Streams items from an RSocket responder to a requester over local TCP under each data MIME type, checking they
+ * arrive intact and logging how many went by per second. Unlike {@link RSocketTest} it needs no running server or
+ * database: the responder is an in-process stand-in for {@code newItems.request-stream}.
+ */
+public class ItemCodecThroughputTest {
+
+	private static final Logger log = LoggerFactory.getLogger(ItemCodecThroughputTest.class);
+
+	static final int ITEMS = 20_000;
+
+	static final List<Item> items = IntStream.range(0, ITEMS) //
+			.mapToObj(i -> new Item(String.format("%024x", i), "name - " + i, i % 10 == 0 ? null : "description - " + i,
+					i + 0.99)) //
+			.collect(Collectors.toList());
+
+	static final List<ItemAck> acks = Arrays.asList(new ItemAck(0, "5f1e0a2b9c3d4e5f6a7b8c9d", null),
+			new ItemAck(300, null, "E11000 duplicate key error"), new ItemAck(Long.MAX_VALUE, null, null));
+
+	static RSocketStrategies strategies;
+	static CloseableChannel server;
+	static LogLevel rootLogLevel;
+
+	@BeforeAll
+	static void startResponder() {
+		// Without a logging configuration everything logs at DEBUG, including each frame, which would dominate.
+		LoggingSystem loggingSystem = LoggingSystem.get(ItemCodecThroughputTest.class.getClassLoader());
+		rootLogLevel = loggingSystem.getLoggerConfiguration(LoggingSystem.ROOT_LOGGER_NAME).getEffectiveLevel();
+		loggingSystem.setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.INFO);
+
+		BinaryItemCodec codec = new BinaryItemCodec();
+		strategies = RSocketStrategies.builder() //
+				.encoders(encoders -> encoders.addAll(0, Arrays.asList(codec, new Jackson2CborEncoder(), new Jackson2JsonEncoder()))) //
+				.decoders(decoders -> decoders.addAll(0, Arrays.asList(codec, new Jackson2CborDecoder(), new Jackson2JsonDecoder()))) //
+				.build();
+
+		RSocketMessageHandler handler = new RSocketMessageHandler();
+		handler.setRSocketStrategies(strategies);
+		handler.setHandlers(Collections.singletonList(new Responder()));
+		handler.afterPropertiesSet();
+
+		server = RSocketServer.create(handler.responder()) //
+				.bind(TcpServerTransport.create("localhost", 0)) //
+				.block();
+	}
+
+	@AfterAll
+	static void stopResponder() {
+		server.dispose();
+		LoggingSystem.get(ItemCodecThroughputTest.class.getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME,
+				rootLogLevel);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "application/json", "application/cbor", BinaryItemCodec.MIME_TYPE })
+	void itemsStreamIntact(String mimeType) {
+		RSocketRequester requester = requester(mimeType);
+		try {
+			// Warm up the codec and the connection first.
+			requester.route("items").retrieveFlux(Item.class).blockLast();
+
+			long start = System.nanoTime();
+			List<Item> received = requester.route("items").retrieveFlux(Item.class).collectList().block();
+			Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+			assertThat(received).isEqualTo(items);
+			log.info("{}: {} items in {} ms, {} items/s", mimeType, ITEMS, elapsed.toMillis(),
+					ITEMS * 1_000_000_000L / Math.max(1, elapsed.toNanos()));
+		} finally {
+			requester.rsocketClient().dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "application/json", "application/cbor", BinaryItemCodec.MIME_TYPE })
+	void acknowledgementsStreamIntact(String mimeType) {
+		RSocketRequester requester = requester(mimeType);
+		try {
+			assertThat(requester.route("acks").retrieveFlux(ItemAck.class).collectList().block()) //
+					.usingRecursiveFieldByFieldElementComparator() //
+					.isEqualTo(acks);
+		} finally {
+			requester.rsocketClient().dispose();
+		}
+	}
+
+	private static RSocketRequester requester(String mimeType) {
+		return RSocketRequester.builder() //
+				.rsocketStrategies(strategies) //
+				.dataMimeType(MimeType.valueOf(mimeType)) //
+				.tcp("localhost", server.address().getPort());
+	}
+
+	static class Responder {
+
+		@MessageMapping("items")
+		Flux<Item> items() {
+			return Flux.fromIterable(items);
+		}
+
+		@MessageMapping("acks")
+		Flux<ItemAck> acks() {
+			return Flux.fromIterable(acks);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Cuts a stream into lists of up to {@code maxSize} elements, or whatever arrived within {@code maxWait} of the
+ * first element of a list, like {@link Flux#bufferTimeout(int, Duration)}, but without ever getting ahead of the
+ * consumer.
+ * <p>
+ * {@code bufferTimeout} emits a list when its timer fires whether or not one was requested, and fails once the
+ * consumer falls behind. Here a full or expired list waits until it is requested, and no more than {@code maxSize}
+ * elements are ever requested from the source beyond those already handed on, so a slow consumer holds the source
+ * back instead.
+ */
+class Batches<T> extends BaseSubscriber<T> {
+
+	private final int maxSize;
+	private final Duration maxWait;
+	private final Scheduler timer;
+	private final FluxSink<List<T>> sink;
+
+	// All guarded by this.
+	private List<T> batch = new ArrayList<>();
+	private boolean due;
+	private boolean done;
+	private boolean draining;
+	private long requested;
+	private Disposable expiry;
+
+	private Batches(int maxSize, Duration maxWait, Scheduler timer, FluxSink<List<T>> sink) {
+		this.maxSize = maxSize;
+		this.maxWait = maxWait;
+		this.timer = timer;
+		this.sink = sink;
+	}
+
+	static <T> Flux<List<T>> of(Flux<T> source, int maxSize, Duration maxWait) {
+		return Flux.create(sink -> {
+			Batches<T> batches = new Batches<>(maxSize, maxWait, Schedulers.parallel(), sink);
+			sink.onRequest(batches::requested);
+			sink.onDispose(batches::dispose);
+			source.subscribe(batches);
+		});
+	}
+
+	@Override
+	protected void hookOnSubscribe(Subscription subscription) {
+		subscription.request(this.maxSize);
+	}
+
+	@Override
+	protected void hookOnNext(T value) {
+		synchronized (this) {
+			this.batch.add(value);
+			if (this.batch.size() == 1) {
+				List<T> current = this.batch;
+				this.expiry = this.timer.schedule(() -> expire(current), this.maxWait.toNanos(), TimeUnit.NANOSECONDS);
+			}
+			if (this.batch.size() < this.maxSize) {
+				return;
+			}
+			this.due = true;
+		}
+		drain();
+	}
+
+	@Override
+	protected void hookOnComplete() {
+		synchronized (this) {
+			this.done = true;
+		}
+		drain();
+	}
+
+	@Override
+	protected void hookOnError(Throwable error) {
+		synchronized (this) {
+			dispose(this.expiry);
+		}
+		this.sink.error(error);
+	}
+
+	@Override
+	protected void hookOnCancel() {
+		synchronized (this) {
+			dispose(this.expiry);
+		}
+	}
+
+	private void requested(long n) {
+		synchronized (this) {
+			this.requested = this.requested + n < 0 ? Long.MAX_VALUE : this.requested + n;
+		}
+		drain();
+	}
+
+	private void expire(List<T> batch) {
+		synchronized (this) {
+			// A timer that fired just as its list went out must not cut the next one short.
+			if (this.batch != batch) {
+				return;
+			}
+			this.due = true;
+		}
+		drain();
+	}
+
+	/**
+	 * Hand on the current list if it is due and was asked for, and finish once the source has. Lists go out while
+	 * holding the lock, so they can't overtake one another; a request made from within {@code sink.next} is picked
+	 * up by the loop instead of draining again.
+	 */
+	private void drain() {
+		synchronized (this) {
+			if (this.draining) {
+				return;
+			}
+			this.draining = true;
+			try {
+				while (this.requested > 0 && (this.due || (this.done && !this.batch.isEmpty()))) {
+					List<T> ready = this.batch;
+					this.batch = new ArrayList<>();
+					this.due = false;
+					this.requested--;
+					dispose(this.expiry);
+					this.sink.next(ready);
+					if (!this.done) {
+						upstream().request(ready.size());
+					}
+				}
+				if (this.done && this.batch.isEmpty()) {
+					this.sink.complete();
+				}
+			} finally {
+				this.draining = false;
+			}
+		}
+	}
+
+	private static void dispose(Disposable disposable) {
+		if (disposable != null) {
+			disposable.dispose();
+		}
+	}
+}
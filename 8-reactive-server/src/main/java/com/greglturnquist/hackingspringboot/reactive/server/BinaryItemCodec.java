@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+
+/**
+ * A compact binary encoding of {@link Item} and {@link ItemAck} payloads, {@value #MIME_TYPE}.
+ * <p>
+ * Fields are written in declaration order with no names. Strings are a varint holding the UTF-8 length plus one,
+ * with zero for {@code null}, followed by the bytes; prices are eight-byte doubles and sequences are varints. Each
+ * payload holds exactly one value. The client has the same codec, and the two must be changed together.
+ */
+class BinaryItemCodec implements Encoder<Object>, Decoder<Object> {
+
+	static final String MIME_TYPE = "application/vnd.inventory.item";
+
+	private static final MimeType ITEM_BINARY = MimeType.valueOf(MIME_TYPE);
+	private static final List<MimeType> MIME_TYPES = Collections.singletonList(ITEM_BINARY);
+
+	@Override
+	public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+		return supports(elementType, mimeType);
+	}
+
+	@Override
+	public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+		return supports(elementType, mimeType);
+	}
+
+	private static boolean supports(ResolvableType elementType, MimeType mimeType) {
+		Class<?> type = elementType.toClass();
+		return (type == Item.class || type == ItemAck.class) && (mimeType == null || ITEM_BINARY.isCompatibleWith(mimeType));
+	}
+
+	@Override
+	public List<MimeType> getEncodableMimeTypes() {
+		return MIME_TYPES;
+	}
+
+	@Override
+	public List<MimeType> getDecodableMimeTypes() {
+		return MIME_TYPES;
+	}
+
+	@Override
+	public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+			ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+		return Flux.from(inputStream).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+	}
+
+	@Override
+	public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+			MimeType mimeType, Map<String, Object> hints) {
+		DataBuffer buffer = bufferFactory.allocateBuffer(128);
+		if (value instanceof Item) {
+			Item item = (Item) value;
+			writeString(buffer, item.getId());
+			writeString(buffer, item.getName());
+			writeString(buffer, item.getDescription());
+			writeDouble(buffer, item.getPrice());
+		} else {
+			ItemAck ack = (ItemAck) value;
+			writeVarLong(buffer, ack.getSequence());
+			writeString(buffer, ack.getId());
+			writeString(buffer, ack.getError());
+		}
+		return buffer;
+	}
+
+	@Override
+	public Flux<Object> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType, MimeType mimeType,
+			Map<String, Object> hints) {
+		return Flux.from(inputStream).map(buffer -> decode(buffer, elementType, mimeType, hints));
+	}
+
+	@Override
+	public Mono<Object> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+			MimeType mimeType, Map<String, Object> hints) {
+		return DataBufferUtils.join(inputStream).map(buffer -> decode(buffer, elementType, mimeType, hints));
+	}
+
+	@Override
+	public Object decode(DataBuffer buffer, ResolvableType targetType, MimeType mimeType, Map<String, Object> hints) {
+		try {
+			if (targetType.toClass() == Item.class) {
+				return new Item(readString(buffer), readString(buffer), readString(buffer), readDouble(buffer));
+			}
+			long sequence = readVarLong(buffer);
+			String id = readString(buffer);
+			String error = readString(buffer);
+			return error == null ? ItemAck.saved(sequence, id) : ItemAck.failed(sequence, error);
+		} catch (IndexOutOfBoundsException e) {
+			throw new DecodingException("Truncated " + targetType.toClass().getSimpleName() + " payload", e);
+		} finally {
+			DataBufferUtils.release(buffer);
+		}
+	}
+
+	private static void writeString(DataBuffer buffer, String value) {
+		if (value == null) {
+			writeVarLong(buffer, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(buffer, bytes.length + 1L);
+		buffer.write(bytes);
+	}
+
+	private static String readString(DataBuffer buffer) {
+		int length = (int) readVarLong(buffer) - 1;
+		if (length < 0) {
+			return null;
+		}
+		if (length > buffer.readableByteCount()) {
+			throw new IndexOutOfBoundsException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.read(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeVarLong(DataBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.write((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.write((byte) value);
+	}
+
+	private static long readVarLong(DataBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.read();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new DecodingException("Malformed varint");
+	}
+
+	private static void writeDouble(DataBuffer buffer, double value) {
+		long bits = Double.doubleToLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			buffer.write((byte) (bits >>> shift));
+		}
+	}
+
+	private static double readDouble(DataBuffer buffer) {
+		long bits = 0;
+		for (int i = 0; i < 8; i++) {
+			bits = bits << 8 | (buffer.read() & 0xFF);
+		}
+		return Double.longBitsToDouble(bits);
+	}
+}
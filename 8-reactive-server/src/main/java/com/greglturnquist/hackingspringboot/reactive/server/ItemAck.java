@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+/**
+ * The outcome of one item sent over {@code newItems.channel}: the id it was saved under, or why it wasn't saved.
+ * {@code sequence} is the item's position in the stream the client sent, counting from zero.
+ */
+public class ItemAck {
+
+	private final long sequence;
+	private final String id;
+	private final String error;
+
+	private ItemAck(long sequence, String id, String error) {
+		this.sequence = sequence;
+		this.id = id;
+		this.error = error;
+	}
+
+	static ItemAck saved(long sequence, String id) {
+		return new ItemAck(sequence, id, null);
+	}
+
+	static ItemAck failed(long sequence, String error) {
+		return new ItemAck(sequence, null, error);
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return "ItemAck{" + "sequence=" + sequence + ", id='" + id + '\'' + ", error='" + error + '\'' + '}';
+	}
+}
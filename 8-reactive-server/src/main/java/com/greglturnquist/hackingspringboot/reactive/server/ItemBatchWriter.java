@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes a stream of new items in batches of up to {@code inventory.channel.batch-size}, or whatever arrived within
+ * {@code inventory.channel.batch-window}, each with a single unordered {@code insertMany}.
+ * <p>
+ * Unordered, MongoDB carries on past an item it rejects, such as a duplicate id, and reports every failure by its
+ * position in the batch, so each item gets its own {@link ItemAck}. The documents are written straight to the
+ * collection, so no mapping events are published for them; saved items are handed to the
+ * {@link NewItemBroadcaster} instead.
+ */
+@Component
+class ItemBatchWriter {
+
+	private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+
+	private final ReactiveMongoOperations operations;
+	private final NewItemBroadcaster newItems;
+	private final int batchSize;
+	private final Duration batchWindow;
+
+	ItemBatchWriter(ReactiveMongoOperations operations, NewItemBroadcaster newItems, //
+			@Value("${inventory.channel.batch-size:500}") int batchSize, //
+			@Value("${inventory.channel.batch-window:100ms}") Duration batchWindow) {
+		this.operations = operations;
+		this.newItems = newItems;
+		this.batchSize = batchSize;
+		this.batchWindow = batchWindow;
+	}
+
+	/**
+	 * Save {@code items} and acknowledge each of them, in the order they were sent. One batch is written at a time
+	 * and at most one more is gathered meanwhile, so a client sending faster than MongoDB keeps up is held back by
+	 * backpressure rather than buffered.
+	 */
+	Flux<ItemAck> write(Flux<Item> items) {
+		return Batches.of(items.index(), this.batchSize, this.batchWindow) //
+				.concatMap(batch -> {
+					List<Item> batchItems = new ArrayList<>(batch.size());
+					batch.forEach(indexed -> batchItems.add(indexed.getT2()));
+					return insertAll(batch.get(0).getT1(), batchItems);
+				}, 1);
+	}
+
+	/**
+	 * Insert {@code items}, the first of which was number {@code firstSequence} in its stream, and acknowledge
+	 * each of them in order. Items saved successfully get their new id set.
+	 */
+	Flux<ItemAck> insertAll(long firstSequence, List<Item> items) {
+		List<Document> documents = new ArrayList<>(items.size());
+		for (Item item : items) {
+			Document document = new Document();
+			this.operations.getConverter().write(item, document);
+			documents.add(document);
+		}
+
+		return this.operations.getCollection(this.operations.getCollectionName(Item.class)) //
+				.flatMap(collection -> Mono.from(collection.insertMany(documents, UNORDERED))) //
+				.map(result -> acks(firstSequence, items, documents, new HashMap<>())) //
+				.onErrorResume(MongoBulkWriteException.class, e -> {
+					Map<Integer, String> errors = new HashMap<>();
+					for (BulkWriteError error : e.getWriteErrors()) {
+						errors.put(error.getIndex(), error.getMessage());
+					}
+					return Mono.just(acks(firstSequence, items, documents, errors));
+				}) //
+				.onErrorResume(e -> Flux.range(0, items.size()) //
+						.map(i -> ItemAck.failed(firstSequence + i, e.getMessage())) //
+						.collectList()) //
+				.map(acks -> publishSaved(items, acks)) //
+				.flatMapIterable(acks -> acks);
+	}
+
+	private static List<ItemAck> acks(long firstSequence, List<Item> items, List<Document> documents,
+			Map<Integer, String> errors) {
+		List<ItemAck> acks = new ArrayList<>(items.size());
+		for (int i = 0; i < items.size(); i++) {
+			String error = errors.get(i);
+			if (error != null) {
+				acks.add(ItemAck.failed(firstSequence + i, error));
+			} else {
+				// The driver adds the _id it generated to each document it inserts.
+				Object id = documents.get(i).get("_id");
+				items.get(i).setId(id instanceof ObjectId ? ((ObjectId) id).toHexString() : String.valueOf(id));
+				acks.add(ItemAck.saved(firstSequence + i, items.get(i).getId()));
+			}
+		}
+		return acks;
+	}
+
+	private List<ItemAck> publishSaved(List<Item> items, List<ItemAck> acks) {
+		for (int i = 0; i < acks.size(); i++) {
+			if (acks.get(i).getError() == null) {
+				this.newItems.publish(items.get(i));
+			}
+		}
+		return acks;
+	}
+}
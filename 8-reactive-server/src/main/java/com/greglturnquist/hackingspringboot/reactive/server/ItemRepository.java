@@ -16,7 +16,35 @@
 
 package com.greglturnquist.hackingspringboot.reactive.server;
 
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 
 public interface ItemRepository extends ReactiveCrudRepository<Item, String> {
+
+	/**
+	 * Largest page {@link #findPage(int, String)} hands out, whatever the caller asks for.
+	 */
+	int MAX_PAGE_SIZE = 1000;
+
+	/**
+	 * Up to {@code limit} items in {@code _id} order, starting right after the item {@code after} (or at the
+	 * beginning when it is {@literal null}).
+	 */
+	default Flux<Item> findPage(int limit, String after) {
+		Pageable page = PageRequest.of(0, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)), Sort.by("id"));
+		if (after == null) {
+			return findAllBy(page);
+		}
+		// Range operators on _id are not converted from String the way equality is, so hand over the ObjectId.
+		return findByIdGreaterThan(ObjectId.isValid(after) ? new ObjectId(after) : after, page);
+	}
+
+	Flux<Item> findAllBy(Pageable pageable);
+
+	Flux<Item> findByIdGreaterThan(Object after, Pageable pageable);
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fans newly saved items out to every {@code newItems.monitor} subscriber without letting any of them hold up the
+ * others, or the writes.
+ * <p>
+ * The multicast sink hands each item only to the subscribers that have room for it. Every subscriber reads
+ * through its own buffer of {@code inventory.monitor.buffer-size} items, so it only runs out of room once it has
+ * fallen that far behind. Then the oldest item in its buffer is dropped ({@code drop-oldest}), or the
+ * subscriber is disconnected ({@code disconnect}), as {@code inventory.monitor.overflow} says. Publishing
+ * never waits on a subscriber.
+ * <p>
+ * The backlog of the subscriber furthest behind is published as {@code inventory.monitor.lag}, and the items
+ * waiting across all of them as {@code inventory.monitor.queued}. Dropped items and disconnects are counted in
+ * {@code inventory.monitor.dropped} and {@code inventory.monitor.disconnected}.
+ */
+@Component
+class NewItemBroadcaster {
+
+	private final Sinks.Many<Item> sink = Sinks.many().multicast().directBestEffort();
+	private final int bufferSize;
+	private final Overflow overflow;
+	private final Counter dropped;
+	private final Counter disconnected;
+	private final Set<AtomicLong> lags = ConcurrentHashMap.newKeySet(); // one per connected subscriber
+
+	NewItemBroadcaster(MeterRegistry meterRegistry, //
+			@Value("${inventory.monitor.buffer-size:256}") int bufferSize, //
+			@Value("${inventory.monitor.overflow:drop-oldest}") Overflow overflow) {
+		this.bufferSize = bufferSize;
+		this.overflow = overflow;
+		this.dropped = Counter.builder("inventory.monitor.dropped") //
+				.description("New items a monitor subscriber fell too far behind to receive") //
+				.register(meterRegistry);
+		this.disconnected = Counter.builder("inventory.monitor.disconnected") //
+				.description("Monitor subscribers disconnected for falling too far behind") //
+				.register(meterRegistry);
+		Gauge.builder("inventory.monitor.subscribers", this.lags, Set::size) //
+				.description("Monitor subscribers currently connected") //
+				.register(meterRegistry);
+		Gauge.builder("inventory.monitor.lag", this, NewItemBroadcaster::maxLag) //
+				.description("New items waiting in the buffer of the monitor subscriber furthest behind") //
+				.register(meterRegistry);
+		Gauge.builder("inventory.monitor.queued", this, NewItemBroadcaster::queued) //
+				.description("New items waiting in the buffers of all monitor subscribers") //
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Hand {@code item} to every current subscriber.
+	 */
+	void publish(Item item) {
+		// Saves complete on many threads at once, but a sink takes one item at a time.
+		synchronized (this.sink) {
+			this.sink.tryEmitNext(item);
+		}
+	}
+
+	/**
+	 * Every item published from the moment of subscription on, minus any this subscriber falls too far behind
+	 * to receive.
+	 */
+	Flux<Item> subscribe() {
+		return Flux.defer(() -> {
+			AtomicLong lag = new AtomicLong();
+			this.lags.add(lag);
+
+			Consumer<Item> drop = item -> {
+				lag.decrementAndGet();
+				this.dropped.increment();
+			};
+			Flux<Item> items = this.sink.asFlux().doOnNext(item -> lag.incrementAndGet());
+			if (this.overflow == Overflow.DROP_OLDEST) {
+				items = items.onBackpressureBuffer(this.bufferSize, drop, BufferOverflowStrategy.DROP_OLDEST);
+			} else {
+				// On overflow the buffer stops reading, but it only reports the error once the subscriber has
+				// drained what it holds, which a stuck subscriber never does. An error needs no demand.
+				Sinks.Empty<Void> disconnect = Sinks.empty();
+				items = items.onBackpressureBuffer(this.bufferSize, drop.andThen(item -> disconnect.tryEmitError( //
+						Exceptions.failWithOverflow("Fell more than " + this.bufferSize + " new items behind")))) //
+						.takeUntilOther(disconnect.asMono());
+			}
+
+			return items //
+					.doOnNext(item -> lag.decrementAndGet()) //
+					.doOnError(Exceptions::isOverflow, error -> this.disconnected.increment()) //
+					.doFinally(signal -> this.lags.remove(lag));
+		});
+	}
+
+	long maxLag() {
+		long max = 0;
+		for (AtomicLong lag : this.lags) {
+			max = Math.max(max, lag.get());
+		}
+		return max;
+	}
+
+	long queued() {
+		long queued = 0;
+		for (AtomicLong lag : this.lags) {
+			queued += lag.get();
+		}
+		return queued;
+	}
+
+	/**
+	 * What to do when a subscriber's buffer is full.
+	 */
+	enum Overflow {
+
+		DROP_OLDEST,
+
+		DISCONNECT
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+import java.time.Duration;
+
+import io.rsocket.core.Resume;
+import io.rsocket.lease.Leases;
+import io.rsocket.resume.InMemoryResumableFramesStore;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.rsocket.messaging.RSocketStrategiesCustomizer;
+import org.springframework.boot.rsocket.server.RSocketServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Session resumption, leases and payload codecs for the RSocket server.
+ * <p>
+ * A client that loses its connection can resume its session, streams and all, for
+ * {@code inventory.rsocket.resume.session-duration}. Until then the server keeps up to
+ * {@code inventory.rsocket.resume.buffer-size} of the frames the client may not have received, so it can send
+ * them again. Sessions live in memory and don't survive a restart of the server. Clients that ask for leases are
+ * granted them by {@link WriteLeases}, which is registered with MongoDB's client to follow its pending writes.
+ * <p>
+ * Besides the JSON and CBOR Spring Boot registers, items can be exchanged as {@value BinaryItemCodec#MIME_TYPE}.
+ * Each connection uses whichever data MIME type its client set up with.
+ */
+@Configuration
+public class RSocketServerConfig {
+
+	@Bean
+	RSocketServerCustomizer resumeAndLease(WriteLeases writeLeases, //
+			@Value("${inventory.rsocket.resume.session-duration:2m}") Duration sessionDuration, //
+			@Value("${inventory.rsocket.resume.buffer-size:1MB}") DataSize bufferSize) {
+		return server -> server //
+				.resume(new Resume() //
+						.sessionDuration(sessionDuration) //
+						.storeFactory(token -> new InMemoryResumableFramesStore("server", (int) bufferSize.toBytes()))) //
+				.lease(() -> Leases.create().sender(stats -> writeLeases.leases()));
+	}
+
+	@Bean
+	MongoClientSettingsBuilderCustomizer pendingWritesListener(WriteLeases writeLeases) {
+		return settings -> settings.addCommandListener(writeLeases);
+	}
+
+	@Bean
+	RSocketStrategiesCustomizer binaryItemCodec() {
+		BinaryItemCodec codec = new BinaryItemCodec();
+		return strategies -> strategies.encoder(codec).decoder(codec);
+	}
+}
@@ -16,8 +16,10 @@
 
 package com.greglturnquist.hackingspringboot.reactive.server;
 
-import reactor.core.publisher.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.stereotype.Controller;
 
@@ -30,23 +32,16 @@ public class RSocketService {
 
 	private final ItemRepository repository;
 	// end::code[]
-	private final EmitterProcessor<Item> itemProcessor;
-
-	private final FluxSink<Item> itemSink;
-
-	//  Deprecated인 FluxProcessor, EmitterProcessor의 대체 구현
-//	private final Sinks.Many<Item> itemsSink;
+	private final NewItemBroadcaster newItems;
+	private final ItemBatchWriter batchWriter;
 
 	// tag::code2[]
-	public RSocketService(ItemRepository repository) {
+	public RSocketService(ItemRepository repository, NewItemBroadcaster newItems, ItemBatchWriter batchWriter) {
 		this.repository = repository; // <2>
 		// end::code2[]
 		// tag::code3[]
-		this.itemProcessor = EmitterProcessor.create(); // <1>
-		this.itemSink = this.itemProcessor.sink(); // <2>
-		//  Deprecated인 FluxProcessor, EmitterProcessor의 대체 구현
-//		this.itemsSink = Sinks.many().multicast().onBackpressureBuffer();
-
+		this.newItems = newItems; // <1>
+		this.batchWriter = batchWriter;
 	}
 	// end::code3[]
 
@@ -54,37 +49,54 @@ public class RSocketService {
 	@MessageMapping("newItems.request-response") // <1>
 	public Mono<Item> processNewItemsViaRSocketRequestResponse(Item item) { // <2>
 		return this.repository.save(item) // <3>
-				.doOnNext(savedItem -> this.itemSink.next(savedItem)); // <4>
-				//  Deprecated인 FluxProcessor, EmitterProcessor의 대체 구현
-//				.doOnNext(savedItem -> this.itemsSink.tryEmitNext(savedItem));
+				.doOnNext(this.newItems::publish); // <4>
 	}
 	// end::request-response[]
 
 	@MessageMapping("newItems.request-stream") // <1>
 	public Flux<Item> findItemsViaRSocketRequestStream() { // <2>
-		return this.repository.findAll() // <3>
-				.doOnNext(this.itemSink::next); // <4>
-		//  Deprecated인 FluxProcessor, EmitterProcessor의 대체 구현
-//				.doOnNext(this.itemsSink::tryEmitNext);
+		return this.repository.findAll(); // <3>
+	}
+
+	/**
+	 * Keyset-paginated variant of {@link #findItemsViaRSocketRequestStream()}. Request
+	 * {@code newItems.request-stream.page.{limit}} for the first page, then
+	 * {@code newItems.request-stream.page.{limit}.after.{id}} with the last id received for each following
+	 * one. A page shorter than {@code limit} is the last.
+	 */
+	@MessageMapping("newItems.request-stream.page.{limit}")
+	public Flux<Item> findFirstPageOfItemsViaRSocketRequestStream(@DestinationVariable int limit) {
+		return this.repository.findPage(limit, null);
+	}
+
+	@MessageMapping("newItems.request-stream.page.{limit}.after.{after}")
+	public Flux<Item> findPageOfItemsViaRSocketRequestStream(@DestinationVariable int limit,
+			@DestinationVariable String after) {
+		return this.repository.findPage(limit, after);
 	}
 
 	// tag::fire-and-forget[]
 	@MessageMapping("newItems.fire-and-forget")
 	public Mono<Void> processNewItemsViaRSocketFireAndForget(Item item) {
 		return this.repository.save(item) //
-				.doOnNext(savedItem -> this.itemSink.next(savedItem)) //
-				//  Deprecated인 FluxProcessor, EmitterProcessor의 대체 구현
-//				.doOnNext(savedItem -> this.itemsSink.tryEmitNext(savedItem))
+				.doOnNext(this.newItems::publish) //
 				.then();
 	}
 	// end::fire-and-forget[]
 
+	/**
+	 * Bulk ingest: save every item the client streams in, batched into unordered bulk inserts, and stream back an
+	 * {@link ItemAck} for each one, in the order they were sent.
+	 */
+	@MessageMapping("newItems.channel")
+	public Flux<ItemAck> processNewItemsViaRSocketRequestChannel(Flux<Item> items) {
+		return this.batchWriter.write(items);
+	}
+
 	// tag::monitor[]
 	@MessageMapping("newItems.monitor") // <1>
 	public Flux<Item> monitorNewItems() { // <2>
-		return this.itemProcessor; // <3>
-		//  Deprecated인 FluxProcessor, EmitterProcessor의 대체 구현
-//		return this.itemsSink.asFlux();
+		return this.newItems.subscribe(); // <3>
 	}
 	// end::monitor[]
 }
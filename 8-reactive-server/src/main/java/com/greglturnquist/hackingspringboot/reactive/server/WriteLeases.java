@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.rsocket.lease.Lease;
+import reactor.core.publisher.Flux;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sizes the RSocket leases this server grants by how backed up its writes to MongoDB are.
+ * <p>
+ * Every {@code inventory.rsocket.lease.interval} each connection is granted a lease for that long, sharing
+ * {@code inventory.rsocket.lease.max-requests} requests equally with the other connections. That allowance shrinks in
+ * proportion to the write commands waiting on MongoDB, down to nothing once {@code max-pending-writes} of them are.
+ * No lease is granted at all then, so once the last one runs out clients refuse further requests themselves until
+ * MongoDB catches up, rather than queueing them here. The writes waiting, counted from the commands MongoDB's client
+ * reports, are published as {@code mongodb.writes.pending}.
+ */
+@Component
+class WriteLeases implements CommandListener {
+
+	private static final Set<String> WRITES = new HashSet<>(
+			Arrays.asList("insert", "update", "delete", "findAndModify", "findandmodify"));
+
+	private final Duration interval;
+	private final int maxRequests;
+	private final int maxPendingWrites;
+	private final AtomicInteger pendingWrites = new AtomicInteger();
+	private final AtomicInteger connections = new AtomicInteger();
+
+	WriteLeases(MeterRegistry meterRegistry, //
+			@Value("${inventory.rsocket.lease.interval:1s}") Duration interval, //
+			@Value("${inventory.rsocket.lease.max-requests:5000}") int maxRequests, //
+			@Value("${inventory.rsocket.lease.max-pending-writes:100}") int maxPendingWrites) {
+		this.interval = interval;
+		this.maxRequests = maxRequests;
+		this.maxPendingWrites = maxPendingWrites;
+		Gauge.builder("mongodb.writes.pending", this.pendingWrites, AtomicInteger::get) //
+				.description("Write commands sent to MongoDB and not yet answered") //
+				.register(meterRegistry);
+	}
+
+	/**
+	 * The leases to grant one connection, for as long as it stays open.
+	 */
+	Flux<Lease> leases() {
+		return Flux.interval(Duration.ZERO, this.interval) //
+				.map(tick -> allowedRequests()) //
+				// A lease can't be for no requests, so grant none and let the last one run out instead.
+				.filter(allowed -> allowed > 0) //
+				.map(allowed -> Lease.create((int) this.interval.toMillis(), allowed)) //
+				.doOnSubscribe(subscription -> this.connections.incrementAndGet()) //
+				.doFinally(signal -> this.connections.decrementAndGet());
+	}
+
+	/**
+	 * One connection's share of the requests this server can take over the next interval.
+	 */
+	int allowedRequests() {
+		int headroom = Math.max(0, this.maxPendingWrites - this.pendingWrites.get());
+		long allowed = (long) this.maxRequests * headroom / this.maxPendingWrites;
+		return (int) (allowed / Math.max(1, this.connections.get()));
+	}
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+		if (WRITES.contains(event.getCommandName())) {
+			this.pendingWrites.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+		if (WRITES.contains(event.getCommandName())) {
+			this.pendingWrites.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void commandFailed(CommandFailedEvent event) {
+		if (WRITES.contains(event.getCommandName())) {
+			this.pendingWrites.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+/**
+ * Checks {@link BinaryItemCodec} against payloads written out byte for byte. The client's {@code BinaryItemCodecTest}
+ * holds the same payloads, so whatever one side encodes, the other is known to decode.
+ */
+class BinaryItemCodecTest {
+
+	// The same in the client's BinaryItemCodecTest; change both together.
+	static final String ITEM = "1935663165306132623963336434653566366137623863396410416c6620616c" //
+			+ "61726d20636c6f636b136b69647320636c6f636b20e28093203132684033fd70a3d70a3d";
+
+	static final String ITEM_WITHOUT_ID_OR_DESCRIPTION = "000e536d7572662054562074726179004038fd70a3d70a3d";
+
+	static final String SAVED = "ac021935663165306132623963336434653566366137623863396400";
+
+	static final String FAILED = "07001b453131303030206475706c6963617465206b6579206572726f72";
+
+	static final String ID = "5f1e0a2b9c3d4e5f6a7b8c9d";
+
+	BinaryItemCodec codec = new BinaryItemCodec();
+
+	@Test
+	void encodesWhatTheClientDecodes() {
+		assertThat(encode(new Item(ID, "Alf alarm clock", "kids clock \u2013 12h", 19.99))).isEqualTo(ITEM);
+		assertThat(encode(new Item("Smurf TV tray", null, 24.99))).isEqualTo(ITEM_WITHOUT_ID_OR_DESCRIPTION);
+		assertThat(encode(ItemAck.saved(300, ID))).isEqualTo(SAVED);
+		assertThat(encode(ItemAck.failed(7, "E11000 duplicate key error"))).isEqualTo(FAILED);
+	}
+
+	@Test
+	void decodesWhatTheClientEncodes() {
+		assertThat(decode(ITEM, Item.class)) //
+				.extracting(Item::getId, Item::getName, Item::getDescription, Item::getPrice) //
+				.containsExactly(ID, "Alf alarm clock", "kids clock \u2013 12h", 19.99);
+		assertThat(decode(ITEM_WITHOUT_ID_OR_DESCRIPTION, Item.class)) //
+				.extracting(Item::getId, Item::getName, Item::getDescription, Item::getPrice) //
+				.containsExactly(null, "Smurf TV tray", null, 24.99);
+		assertThat(decode(SAVED, ItemAck.class)) //
+				.extracting(ItemAck::getSequence, ItemAck::getId, ItemAck::getError) //
+				.containsExactly(300L, ID, null);
+		assertThat(decode(FAILED, ItemAck.class)) //
+				.extracting(ItemAck::getSequence, ItemAck::getId, ItemAck::getError) //
+				.containsExactly(7L, null, "E11000 duplicate key error");
+	}
+
+	private String encode(Object value) {
+		DataBuffer buffer = this.codec.encodeValue(value, new DefaultDataBufferFactory(), ResolvableType.forInstance(value),
+				null, Collections.emptyMap());
+		try {
+			StringBuilder hex = new StringBuilder();
+			while (buffer.readableByteCount() > 0) {
+				hex.append(String.format("%02x", buffer.read()));
+			}
+			return hex.toString();
+		} finally {
+			DataBufferUtils.release(buffer);
+		}
+	}
+
+	private <T> T decode(String hex, Class<T> type) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return type.cast(this.codec.decode(new DefaultDataBufferFactory().wrap(bytes), ResolvableType.forClass(type),
+				null, Collections.emptyMap()));
+	}
+}
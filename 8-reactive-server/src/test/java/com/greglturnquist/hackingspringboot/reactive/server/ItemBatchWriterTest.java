@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+/**
+ * Feeds {@link ItemBatchWriter} through a stand-in for MongoDB that takes its time over each batch, checking a fast
+ * client is held back instead of buffered and a slow one still gets its acknowledgements within the batch window.
+ */
+class ItemBatchWriterTest {
+
+	static final int ITEMS = 5_000;
+
+	static final int BATCH_SIZE = 100;
+
+	AtomicLong sent = new AtomicLong();
+
+	AtomicLong written = new AtomicLong();
+
+	AtomicLong mostAhead = new AtomicLong();
+
+	ItemBatchWriter writer = new ItemBatchWriter(null, null, BATCH_SIZE, Duration.ofMillis(50)) {
+
+		@Override
+		Flux<ItemAck> insertAll(long firstSequence, List<Item> items) {
+			return Mono.delay(Duration.ofMillis(5)) //
+					.thenMany(Flux.range(0, items.size())) //
+					.map(i -> ItemAck.saved(firstSequence + i, items.get(i).getId())) //
+					.doOnComplete(() -> written.addAndGet(items.size()));
+		}
+	};
+
+	@Test
+	void aFastClientIsHeldBackByASlowWriter() {
+		Flux<Item> items = Flux.range(0, ITEMS) //
+				.map(i -> new Item("item-" + i, "item " + i, "new item", i)) //
+				.doOnNext(item -> this.mostAhead.accumulateAndGet(this.sent.incrementAndGet() - this.written.get(),
+						Math::max));
+
+		List<Long> sequences = this.writer.write(items) //
+				.map(ItemAck::getSequence) //
+				.collectList() //
+				.block(Duration.ofSeconds(30));
+
+		assertThat(sequences).isEqualTo(LongStream.range(0, ITEMS).boxed().collect(Collectors.toList()));
+		// One batch being written, one waiting for it and one being gathered.
+		assertThat(this.mostAhead.get()).isLessThanOrEqualTo(3 * BATCH_SIZE);
+	}
+
+	@Test
+	void aTricklingClientIsAcknowledgedWithinTheBatchWindow() {
+		Flux<Item> items = Flux.interval(Duration.ofMillis(10)) //
+				.take(10) //
+				.map(i -> new Item("item-" + i, "item " + i, "new item", i)) //
+				.concatWith(Flux.never());
+
+		StepVerifier.create(this.writer.write(items)) //
+				.expectNextCount(10) //
+				.thenCancel() //
+				.verify(Duration.ofSeconds(5));
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Exceptions;
+import reactor.test.StepVerifier;
+
+/**
+ * Publishes to a fast and a stalled {@link NewItemBroadcaster} subscriber, checking the fast one gets every item
+ * while the stalled one drops or is disconnected.
+ */
+class NewItemBroadcasterTest {
+
+	static final int ITEMS = 100;
+
+	static final int BUFFER_SIZE = 4;
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	List<Item> items = IntStream.range(0, ITEMS) //
+			.mapToObj(i -> new Item("item-" + i, "item " + i, "new item", i)) //
+			.collect(Collectors.toList());
+
+	@Test
+	void aStalledSubscriberDropsItsOldestItemsWithoutHoldingUpTheOthers() {
+		NewItemBroadcaster broadcaster = new NewItemBroadcaster(this.meterRegistry, BUFFER_SIZE,
+				NewItemBroadcaster.Overflow.DROP_OLDEST);
+		List<Item> fast = new ArrayList<>();
+		broadcaster.subscribe().subscribe(fast::add);
+
+		StepVerifier.create(broadcaster.subscribe(), 0) //
+				.then(() -> {
+					this.items.forEach(broadcaster::publish);
+
+					assertThat(fast).isEqualTo(this.items);
+					assertThat(gauge("inventory.monitor.subscribers")).isEqualTo(2);
+					assertThat(gauge("inventory.monitor.lag")).isEqualTo(BUFFER_SIZE);
+					assertThat(gauge("inventory.monitor.queued")).isEqualTo(BUFFER_SIZE);
+					assertThat(this.meterRegistry.get("inventory.monitor.dropped").counter().count())
+							.isEqualTo(ITEMS - BUFFER_SIZE);
+				}) //
+				.thenRequest(BUFFER_SIZE) //
+				.expectNextSequence(this.items.subList(ITEMS - BUFFER_SIZE, ITEMS)) //
+				.then(() -> assertThat(gauge("inventory.monitor.lag")).isZero()) //
+				.thenCancel() //
+				.verify();
+
+		assertThat(gauge("inventory.monitor.subscribers")).isEqualTo(1);
+	}
+
+	@Test
+	void aStalledSubscriberIsDisconnectedWithoutHoldingUpTheOthers() {
+		NewItemBroadcaster broadcaster = new NewItemBroadcaster(this.meterRegistry, BUFFER_SIZE,
+				NewItemBroadcaster.Overflow.DISCONNECT);
+		List<Item> fast = new ArrayList<>();
+		broadcaster.subscribe().subscribe(fast::add);
+
+		StepVerifier.create(broadcaster.subscribe(), 0) //
+				.then(() -> this.items.forEach(broadcaster::publish)) //
+				.expectErrorMatches(Exceptions::isOverflow) //
+				.verify();
+
+		assertThat(fast).isEqualTo(this.items);
+		assertThat(this.meterRegistry.get("inventory.monitor.disconnected").counter().count()).isEqualTo(1);
+		assertThat(gauge("inventory.monitor.subscribers")).isEqualTo(1);
+		assertThat(gauge("inventory.monitor.lag")).isZero();
+	}
+
+	private double gauge(String name) {
+		return this.meterRegistry.get(name).gauge().value();
+	}
+}
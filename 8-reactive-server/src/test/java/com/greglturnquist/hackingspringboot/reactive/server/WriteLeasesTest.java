@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greglturnquist.hackingspringboot.reactive.server;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.SocketAcceptor;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.lease.Leases;
+import io.rsocket.lease.MissingLeaseException;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.DefaultPayload;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.retry.Retry;
+
+/**
+ * Follows write commands through {@link WriteLeases}, checking the requests it leases shrink as they pile up on
+ * MongoDB and that a client is refused leases, and so has its requests rejected, until they drain.
+ */
+class WriteLeasesTest {
+
+	static final ConnectionDescription CONNECTION = new ConnectionDescription(
+			new ServerId(new ClusterId(), new ServerAddress()));
+
+	static final int MAX_REQUESTS = 10;
+
+	static final int MAX_PENDING_WRITES = 2;
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	WriteLeases writeLeases = new WriteLeases(this.meterRegistry, Duration.ofMillis(100), MAX_REQUESTS,
+			MAX_PENDING_WRITES);
+
+	@Test
+	void theAllowanceShrinksAsWritesPileUp() {
+		assertThat(this.writeLeases.allowedRequests()).isEqualTo(MAX_REQUESTS);
+
+		started("insert");
+		started("find");
+		assertThat(this.writeLeases.allowedRequests()).isEqualTo(MAX_REQUESTS / MAX_PENDING_WRITES);
+
+		started("update");
+		assertThat(this.writeLeases.allowedRequests()).isZero();
+		assertThat(this.meterRegistry.get("mongodb.writes.pending").gauge().value()).isEqualTo(MAX_PENDING_WRITES);
+
+		succeeded("insert");
+		succeeded("find");
+		assertThat(this.writeLeases.allowedRequests()).isEqualTo(MAX_REQUESTS / MAX_PENDING_WRITES);
+	}
+
+	@Test
+	void requestsAreRejectedWhileWritesArePilingUp() {
+		CloseableChannel server = RSocketServer
+				.create(SocketAcceptor.forRequestResponse(payload -> Mono.just(DefaultPayload.create("saved")))) //
+				.lease(() -> Leases.create().sender(stats -> this.writeLeases.leases())) //
+				.bind(TcpServerTransport.create("localhost", 0)) //
+				.block();
+		RSocket client = RSocketConnector.create() //
+				.lease(Leases::create) //
+				.connect(TcpClientTransport.create(server.address())) //
+				.block();
+		try {
+			StepVerifier.create(request(client)) //
+					.expectNext("saved") //
+					.verifyComplete();
+
+			started("insert");
+			started("insert");
+
+			// Let the lease granted before the writes piled up run out.
+			StepVerifier.create(Mono.delay(Duration.ofMillis(250)) //
+					.then(client.requestResponse(DefaultPayload.create("item")))) //
+					.expectError(MissingLeaseException.class) //
+					.verify(Duration.ofSeconds(5));
+
+			succeeded("insert");
+			succeeded("insert");
+
+			StepVerifier.create(request(client)) //
+					.expectNext("saved") //
+					.verifyComplete();
+		} finally {
+			client.dispose();
+			server.dispose();
+		}
+	}
+
+	/**
+	 * A request that waits for the client to be granted a lease to send it under.
+	 */
+	private static Mono<String> request(RSocket client) {
+		return Mono.defer(() -> client.requestResponse(DefaultPayload.create("item"))) //
+				.map(Payload::getDataUtf8) //
+				.retryWhen(Retry.fixedDelay(50, Duration.ofMillis(20)).filter(MissingLeaseException.class::isInstance));
+	}
+
+	private void started(String command) {
+		this.writeLeases.commandStarted(new CommandStartedEvent(1, CONNECTION, "test", command, new BsonDocument()));
+	}
+
+	private void succeeded(String command) {
+		this.writeLeases.commandSucceeded(new CommandSucceededEvent(1, CONNECTION, command, new BsonDocument(), 0));
+	}
+}
@@ -29,6 +29,7 @@ import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
 import org.springframework.hateoas.IanaLinkRelations;
 import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
 import org.springframework.hateoas.Links;
 import org.springframework.hateoas.RepresentationModel;
 import org.springframework.hateoas.mediatype.alps.Alps;
@@ -64,6 +65,15 @@ public class ApiItemController {
 	}
 	// end::intro[]
 
+	private final LinkTemplate itemLink = LinkTemplate.of( //
+			linkTo(methodOn(ApiItemController.class).findOne(LinkTemplate.ID, null)).withSelfRel());
+	private final LinkTemplate deleteLink = LinkTemplate.of( //
+			linkTo(methodOn(ApiItemController.class).deleteItem(LinkTemplate.ID)).withSelfRel());
+	private final LinkTemplate aggregateLink = LinkTemplate.of( //
+			linkTo(methodOn(ApiItemController.class).findAll(null)).withSelfRel());
+	private final LinkTemplate addNewLink = LinkTemplate.of( //
+			linkTo(methodOn(ApiItemController.class).addNewItem(null, null)).withSelfRel());
+
 	// tag::root[]
 	@GetMapping("/api")
 	Mono<RepresentationModel<?>> root() {
@@ -85,27 +95,23 @@ public class ApiItemController {
 	// tag::find-all[]
 	@GetMapping("/api/items")
 	Mono<CollectionModel<EntityModel<Item>>> findAll(Authentication auth) {
-		ApiItemController controller = methodOn(ApiItemController.class);
-
-		Mono<Link> selfLink = linkTo(controller.findAll(auth)).withSelfRel().toMono();
-
-		Mono<Links> allLinks;
-
-		if (auth.getAuthorities().contains(ROLE_INVENTORY)) {
-			Mono<Link> addNewLink = linkTo(controller.addNewItem(null, auth)).withRel("add").toMono();
-
-			allLinks = Mono.zip(selfLink, addNewLink) //
-					.map(links -> Links.of(links.getT1(), links.getT2()));
-		} else {
-			allLinks = selfLink //
-					.map(link -> Links.of(link));
-		}
-
-		return allLinks //
-				.flatMap(links -> this.repository.findAll() //
-						.flatMap(item -> findOne(item.getId(), auth)) //
-						.collectList() //
-						.map(entityModels -> CollectionModel.of(entityModels, links)));
+		return LinkTemplate.baseUri(this.itemLink, this.deleteLink, this.aggregateLink, this.addNewLink) //
+				.flatMap(baseUri -> {
+					Link selfLink = this.aggregateLink.expand(baseUri, IanaLinkRelations.SELF);
+
+					Links links;
+
+					if (auth.getAuthorities().contains(ROLE_INVENTORY)) {
+						links = Links.of(selfLink, this.addNewLink.expand(baseUri, LinkRelation.of("add")));
+					} else {
+						links = Links.of(selfLink);
+					}
+
+					return this.repository.findAll() //
+							.map(item -> EntityModel.of(item, itemLinks(baseUri, item.getId(), auth))) //
+							.collectList() //
+							.map(entityModels -> CollectionModel.of(entityModels, links));
+				});
 	}
 	// end::find-all[]
 
@@ -139,6 +145,18 @@ public class ApiItemController {
 
 	// end::find-one[]
 
+	private Links itemLinks(String baseUri, String id, Authentication auth) {
+		Link selfLink = this.itemLink.expand(baseUri, id, IanaLinkRelations.SELF);
+		Link aggregateLink = this.aggregateLink.expand(baseUri, IanaLinkRelations.ITEM);
+
+		if (auth.getAuthorities().contains(ROLE_INVENTORY)) {
+			return Links.of(selfLink, aggregateLink, //
+					this.deleteLink.expand(baseUri, id, LinkRelation.of("delete")));
+		} else {
+			return Links.of(selfLink, aggregateLink);
+		}
+	}
+
 	// tag::add-new-item[]
 	@PreAuthorize("hasRole('" + INVENTORY + "')") // <1>
 	@PostMapping("/api/items/add") // <2>
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import static org.springframework.web.filter.reactive.ServerWebExchangeContextFilter.*;
+
+import java.nio.charset.StandardCharsets;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
+import org.springframework.hateoas.server.reactive.WebFluxLinkBuilder;
+import org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.WebFluxLink;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * A controller link resolved through {@link WebFluxLinkBuilder} the first time it is needed, then expanded per
+ * item by splicing the encoded id in, so listing every item doesn't proxy the controller once per item.
+ * <p>
+ * A slimmer take on chapter 6's template: the links here carry no affordances.
+ */
+final class LinkTemplate {
+
+	/**
+	 * Stands in for the path variable while the template is resolved.
+	 */
+	static final String ID = "__ID__";
+
+	private final Mono<String> resolution;
+	private volatile String prefix;
+	private volatile String suffix;
+
+	private LinkTemplate(WebFluxLink link) {
+		// Resolved outside of any request, so its href is relative to the application root.
+		this.resolution = link.toMono() //
+				.contextWrite(context -> context.delete(EXCHANGE_CONTEXT_ATTRIBUTE)) //
+				.map(Link::getHref) //
+				.doOnNext(href -> {
+					int index = href.indexOf(ID);
+					this.suffix = index < 0 ? "" : href.substring(index + ID.length());
+					this.prefix = index < 0 ? href : href.substring(0, index);
+				}) //
+				.cache();
+	}
+
+	static LinkTemplate of(WebFluxLink link) {
+		return new LinkTemplate(link);
+	}
+
+	/**
+	 * The scheme, host and context path links of the current request are built on, or an empty string outside
+	 * of a request, once {@code templates} are resolved and ready to expand.
+	 */
+	static Mono<String> baseUri(LinkTemplate... templates) {
+		return Flux.fromArray(templates) //
+				.concatMap(template -> template.resolution) //
+				.then(Mono.deferContextual(context -> Mono.just(context //
+						.<ServerWebExchange> getOrEmpty(EXCHANGE_CONTEXT_ATTRIBUTE) //
+						.map(LinkTemplate::baseUri) //
+						.orElse(""))));
+	}
+
+	private static String baseUri(ServerWebExchange exchange) {
+		String baseUri = UriComponentsBuilder.fromHttpRequest(exchange.getRequest()) //
+				.replacePath(exchange.getRequest().getPath().contextPath().value()) //
+				.replaceQuery("") //
+				.build() //
+				.toUriString();
+
+		return baseUri.endsWith("/") ? baseUri.substring(0, baseUri.length() - 1) : baseUri;
+	}
+
+	/**
+	 * Expand a template without a path variable.
+	 */
+	Link expand(String baseUri, LinkRelation relation) {
+		return Link.of(baseUri + prefix(), relation);
+	}
+
+	/**
+	 * Expand a template with {@code id} as its path variable.
+	 */
+	Link expand(String baseUri, String id, LinkRelation relation) {
+		return Link.of(baseUri + prefix() + UriUtils.encodePathSegment(id, StandardCharsets.UTF_8) + this.suffix,
+				relation);
+	}
+
+	private String prefix() {
+		String prefix = this.prefix;
+		if (prefix == null) {
+			throw new IllegalStateException("Link template not resolved yet; expand it inside baseUri(...)");
+		}
+		return prefix;
+	}
+}
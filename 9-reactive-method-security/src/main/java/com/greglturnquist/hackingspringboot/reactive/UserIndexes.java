@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.greglturnquist.hackingspringboot.reactive;
+
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the index on user names when the application starts.
+ * <p>
+ * {@link UserRepository#findByName} runs on every authentication, and without an index it scans every user. The
+ * index is unique, so a name always picks out one user, and uses the default collation, as that query does, so
+ * names still match with their case.
+ */
+@Component
+class UserIndexes {
+
+	@Bean
+	CommandLineRunner createUserIndexes(MongoOperations mongo) {
+		return args -> mongo.indexOps(User.class) //
+				.ensureIndex(new Index("name", Sort.Direction.ASC).unique());
+	}
+}